@@ -0,0 +1,73 @@
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+// Lock-free Union-Find shared by NetworkTopology (parallel Borůvka) and MinimumNetworkCost.
+//
+// parent[] lives in an AtomicIntegerArray, and every structural change is a single CAS:
+// - a root is linked under another root, or
+// - a node is pointed at its grandparent (path halving).
+// Roots are linked by a fixed total order on ids (a mixed hash, ties broken by id), so concurrent
+// unions can never form a cycle. Rank would need a second CAS; the hashed order acts like randomized
+// linking and keeps trees O(log n) deep in expectation.
+class ConcurrentUnionFind {
+    private final AtomicIntegerArray parent;
+    private final AtomicInteger components;
+
+    // Elements 0..size-1, each in its own set
+    ConcurrentUnionFind(int size) {
+        parent = new AtomicIntegerArray(size);
+        for (int i = 0; i < size; i++) {
+            parent.set(i, i);
+        }
+        components = new AtomicInteger(size);
+    }
+
+    int find(int x) {
+        while (true) {
+            int p = parent.get(x);
+            if (p == x) return x;
+            int grandparent = parent.get(p);
+            if (p != grandparent) parent.compareAndSet(x, p, grandparent); // Losing this race is harmless
+            x = grandparent;
+        }
+    }
+
+    // Returns true if this call merged two sets
+    boolean union(int x, int y) {
+        while (true) {
+            int rootX = find(x), rootY = find(y);
+            if (rootX == rootY) return false;
+            if (outranks(rootX, rootY)) {
+                int t = rootX;
+                rootX = rootY;
+                rootY = t;
+            }
+            if (parent.compareAndSet(rootX, rootX, rootY)) { // Fails if rootX stopped being a root
+                components.decrementAndGet();
+                return true;
+            }
+        }
+    }
+
+    boolean sameSet(int x, int y) {
+        while (true) {
+            int rootX = find(x), rootY = find(y);
+            if (rootX == rootY) return true;
+            if (parent.get(rootX) == rootX) return false; // rootX was still a root after rootY was found
+        }
+    }
+
+    // Number of disjoint sets; exact once concurrent unions have finished
+    int componentCount() {
+        return components.get();
+    }
+
+    int size() {
+        return parent.length();
+    }
+
+    private static boolean outranks(int a, int b) {
+        int ha = (a * 0x9E3779B9) ^ (a >>> 16), hb = (b * 0x9E3779B9) ^ (b >>> 16);
+        return ha != hb ? ha > hb : a > b;
+    }
+}
@@ -1,4 +1,8 @@
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Algorithm Explanation:
@@ -24,8 +28,47 @@ import java.util.*;
  *    - If all `n` devices are connected using `n` edges, return the cost.
  *    - Otherwise, return -1 (not all devices can be connected).
  * 
- * Time Complexity: **O(E log E) ≈ O(n log n)** (Sorting edges and performing Union-Find)
- * Space Complexity: **O(n)** (For storing parent and rank arrays in Union-Find)
+ * 4. **Primitive Edge Store**:
+ *    - Edges are never materialized as objects. Edge `i < n` is the module edge (0, i+1, modules[i]);
+ *      edge `i >= n` is `connections[i-n]`.
+ *    - Each edge is one packed `long` key: `cost << 32 | index`. Sorting keys sorts edges by cost, and
+ *      ties keep input order.
+ *    - Keys are sorted with a stable LSD radix sort over the 32 cost bits, in two 16-bit passes.
+ *      A pass is skipped when every key shares that digit.
+ *    - `find()` uses iterative path halving, so long parent chains cannot overflow the stack.
+ *    - Run with "bench [devices] [edgesPerDevice]" to compare against the List<int[]> version.
+ * 
+ * 5. **Online Updates** (`OnlineNetworkCost`):
+ *    - `addDevice(moduleCost)` and `addConnection(u, v, cost)` keep the minimum cost current as events arrive.
+ *    - It uses the same virtual node 0, so the chosen edges always form a single tree rooted at it.
+ *    - A new connection swaps out the most expensive edge on its tree cycle, if that edge costs more.
+ *      A link-cut tree finds that edge in O(log n) amortized time.
+ *    - Run with "bench-online [devices] [edgesPerDevice]" to time the event replay.
+ * 
+ * 6. **Parallel Filter-Kruskal** (`minCostToConnectDevicesParallel`):
+ *    - Kruskal stops after `n` edges, so most of a dense input never needs sorting.
+ *    - Edges are split around a sampled median key. The cheap half is solved first; then edges in the
+ *      expensive half whose endpoints are already connected are dropped, and the rest recurse.
+ *    - Partitioning and filtering run as fork-join chunk tasks. Ranges of at most max(n, 16K) edges are sorted
+ *      with `Arrays.parallelSort` and scanned with the sequential Union-Find.
+ *    - Run with "bench-filter [devices] [threads]" to compare at 10, 25, 50 and 100 connections per device.
+ * 
+ * 7. **Concurrent Union-Find** (`ConcurrentUnionFind.java`, shared with NetworkTopology):
+ *    - Lock-free union/find/sameSet over an `AtomicIntegerArray`, plus a live component count, for
+ *      connectivity checks from many threads over one shared device set.
+ *    - Run with "stress [threads]" to check it against the sequential Union-Find under contention, and with
+ *      "bench-concurrent [devices] [operations] [maxThreads]" for throughput from 1 to N threads.
+ * 
+ * 8. **Bill of Materials** (`planNetwork`):
+ *    - Costs are summed in a `long`. `minCostToConnectDevices` throws `ArithmeticException` instead of
+ *      silently wrapping when the total does not fit in an int.
+ *    - `NetworkPlan` lists the chosen modules and links, with module and link totals.
+ *    - It also gives a subtotal per component, meaning the devices served by each module.
+ *    - It is built from the same Kruskal pass. Components come from a Union-Find over the chosen links
+ *      in O(n α(n)), with no extra sort.
+ * 
+ * Time Complexity: **O(E + n α(n))** (Radix sort plus Union-Find)
+ * Space Complexity: **O(E + n)** (Two long arrays of keys plus parent and rank arrays in Union-Find)
  */
 
 public class MinimumNetworkCost {
@@ -41,12 +84,21 @@ public class MinimumNetworkCost {
             }
         }
 
-        // Find operation with path compression
+        // Find operation with path halving (iterative, so deep chains cannot overflow the stack)
         public int find(int x) {
-            if (parent[x] != x) {
-                parent[x] = find(parent[x]); // Path compression
+            while (parent[x] != x) {
+                parent[x] = parent[parent[x]]; // Point x at its grandparent
+                x = parent[x];
+            }
+            return x;
+        }
+
+        // Find without path halving: read-only, so several threads may call it while no union runs
+        public int root(int x) {
+            while (parent[x] != x) {
+                x = parent[x];
             }
-            return parent[x];
+            return x;
         }
 
         // Union operation by rank
@@ -70,8 +122,595 @@ public class MinimumNetworkCost {
         }
     }
 
-    // Function to calculate the minimum cost to connect all devices
+    // Online version: devices and connections arrive one at a time and the minimum cost is kept current.
+    // Every device is linked to the virtual node 0 by its module edge, so the chosen edges always form one
+    // spanning tree. A new connection (u, v, c) replaces the most expensive edge on the tree path u..v if
+    // that edge costs more than c. Paths are found with a link-cut tree, so each event takes O(log n)
+    // amortized time.
+    static class OnlineNetworkCost {
+        // Link-cut nodes: one vertex node per device (virtual node 0 first), created as the device arrives and
+        // found through vertexNode; edge nodes are allocated as edges enter the tree and reused once they leave
+        private int[] left = new int[16], right = new int[16], parent = new int[16];
+        private boolean[] flip = new boolean[16];   // Pending reversal of the subtree
+        private int[] top = new int[16];            // Node holding the most expensive edge in the splay subtree, -1 if none
+        private int[] edgeOf = new int[16];         // Edge id of an edge node, -1 for vertex nodes
+        private int nodeCount;
+        private int[] freeNodes = new int[16];      // Released edge nodes
+        private int freeCount;
+        private int[] stack = new int[16];          // Scratch for splay
+
+        // Every edge seen so far, by edge id
+        private int[] edgeU = new int[16], edgeV = new int[16], edgeCost = new int[16], edgeNode = new int[16];
+        private int edgeCount;
+
+        private int[] vertexNode = new int[16];
+        private int deviceCount;
+        private long totalCost;
+
+        public OnlineNetworkCost() {
+            vertexNode[0] = newNode(-1); // Virtual node 0
+        }
+
+        // New device with the given module cost; returns its id (1, 2, ...)
+        public int addDevice(int moduleCost) {
+            int device = ++deviceCount;
+            if (device == vertexNode.length) vertexNode = Arrays.copyOf(vertexNode, device * 2);
+            vertexNode[device] = newNode(-1);
+            addConnection(0, device, moduleCost); // A fresh device is a leaf, so its module edge always enters
+            return device;
+        }
+
+        // New connection between existing devices; returns its edge id
+        public int addConnection(int u, int v, int cost) {
+            if (u < 0 || v < 0 || u > deviceCount || v > deviceCount) {
+                throw new IllegalArgumentException("unknown device in connection " + u + "-" + v);
+            }
+            int e = edgeCount++;
+            if (e == edgeU.length) {
+                int capacity = e * 2;
+                edgeU = Arrays.copyOf(edgeU, capacity);
+                edgeV = Arrays.copyOf(edgeV, capacity);
+                edgeCost = Arrays.copyOf(edgeCost, capacity);
+                edgeNode = Arrays.copyOf(edgeNode, capacity);
+            }
+            edgeU[e] = u;
+            edgeV[e] = v;
+            edgeCost[e] = cost;
+            edgeNode[e] = -1;
+            if (u == v) return e;
+
+            int a = vertexNode[u], b = vertexNode[v];
+            if (findRoot(a) != findRoot(b)) {
+                attach(e);
+                return e;
+            }
+            makeRoot(a);
+            access(b);
+            int heaviest = top[b];
+            if (heaviest != -1 && costlier(edgeOf[heaviest], e)) {
+                detach(edgeOf[heaviest]);
+                attach(e);
+            }
+            return e;
+        }
+
+        public long totalCost() {
+            return totalCost;
+        }
+
+        public int deviceCount() {
+            return deviceCount;
+        }
+
+        // Chosen edges as {u, v, cost}; u == 0 means "install the module on v"
+        public List<int[]> chosenEdges() {
+            List<int[]> chosen = new ArrayList<>(deviceCount);
+            for (int e = 0; e < edgeCount; e++) {
+                if (edgeNode[e] >= 0) chosen.add(new int[]{edgeU[e], edgeV[e], edgeCost[e]});
+            }
+            return chosen;
+        }
+
+        // Ranked by cost, then by arrival, so the result is the same as Kruskal with a stable sort
+        private boolean costlier(int e, int f) {
+            return edgeCost[e] > edgeCost[f] || (edgeCost[e] == edgeCost[f] && e > f);
+        }
+
+        private void attach(int e) {
+            int node = newNode(e);
+            link(node, vertexNode[edgeU[e]]);
+            link(vertexNode[edgeV[e]], node);
+            edgeNode[e] = node;
+            totalCost += edgeCost[e];
+        }
+
+        private void detach(int e) {
+            int node = edgeNode[e];
+            cut(node, vertexNode[edgeU[e]]);
+            cut(node, vertexNode[edgeV[e]]);
+            if (freeCount == freeNodes.length) freeNodes = Arrays.copyOf(freeNodes, freeCount * 2);
+            freeNodes[freeCount++] = node;
+            edgeNode[e] = -1;
+            totalCost -= edgeCost[e];
+        }
+
+        private int newNode(int edge) {
+            int x;
+            if (freeCount > 0) {
+                x = freeNodes[--freeCount];
+            } else {
+                if (nodeCount == left.length) {
+                    int capacity = nodeCount * 2;
+                    left = Arrays.copyOf(left, capacity);
+                    right = Arrays.copyOf(right, capacity);
+                    parent = Arrays.copyOf(parent, capacity);
+                    flip = Arrays.copyOf(flip, capacity);
+                    top = Arrays.copyOf(top, capacity);
+                    edgeOf = Arrays.copyOf(edgeOf, capacity);
+                    stack = new int[capacity];
+                }
+                x = nodeCount++;
+            }
+            left[x] = right[x] = parent[x] = -1;
+            flip[x] = false;
+            edgeOf[x] = edge;
+            top[x] = edge >= 0 ? x : -1;
+            return x;
+        }
+
+        // --- Link-cut tree primitives ---
+
+        private boolean isSplayRoot(int x) {
+            int p = parent[x];
+            return p == -1 || (left[p] != x && right[p] != x);
+        }
+
+        private void push(int x) {
+            if (!flip[x]) return;
+            int l = left[x];
+            left[x] = right[x];
+            right[x] = l;
+            if (left[x] != -1) flip[left[x]] ^= true;
+            if (right[x] != -1) flip[right[x]] ^= true;
+            flip[x] = false;
+        }
+
+        private void pull(int x) {
+            int t = edgeOf[x] >= 0 ? x : -1;
+            int l = left[x], r = right[x];
+            if (l != -1 && top[l] != -1 && (t == -1 || costlier(edgeOf[top[l]], edgeOf[t]))) t = top[l];
+            if (r != -1 && top[r] != -1 && (t == -1 || costlier(edgeOf[top[r]], edgeOf[t]))) t = top[r];
+            top[x] = t;
+        }
+
+        private void rotate(int x) {
+            int p = parent[x], g = parent[p];
+            if (!isSplayRoot(p)) {
+                if (left[g] == p) left[g] = x;
+                else right[g] = x;
+            }
+            parent[x] = g;
+            if (left[p] == x) {
+                left[p] = right[x];
+                if (right[x] != -1) parent[right[x]] = p;
+                right[x] = p;
+            } else {
+                right[p] = left[x];
+                if (left[x] != -1) parent[left[x]] = p;
+                left[x] = p;
+            }
+            parent[p] = x;
+            pull(p);
+            pull(x);
+        }
+
+        private void splay(int x) {
+            int depth = 0;
+            stack[depth++] = x;
+            for (int y = x; !isSplayRoot(y); y = parent[y]) stack[depth++] = parent[y];
+            while (depth > 0) push(stack[--depth]); // Resolve reversals from the splay root down
+            while (!isSplayRoot(x)) {
+                int p = parent[x];
+                if (!isSplayRoot(p)) {
+                    int g = parent[p];
+                    rotate((left[g] == p) == (left[p] == x) ? p : x); // Zig-zig rotates the parent first
+                }
+                rotate(x);
+            }
+        }
+
+        // Make the root-to-x path preferred; x ends up at the root of its splay tree
+        private void access(int x) {
+            for (int y = x, last = -1; y != -1; last = y, y = parent[y]) {
+                splay(y);
+                right[y] = last;
+                pull(y);
+            }
+            splay(x);
+        }
+
+        private void makeRoot(int x) {
+            access(x);
+            flip[x] ^= true;
+        }
+
+        private int findRoot(int x) {
+            access(x);
+            int r = x;
+            push(r);
+            while (left[r] != -1) {
+                r = left[r];
+                push(r);
+            }
+            splay(r);
+            return r;
+        }
+
+        private void link(int x, int y) {
+            makeRoot(x);
+            parent[x] = y;
+        }
+
+        // Remove the tree edge between adjacent nodes x and y
+        private void cut(int x, int y) {
+            makeRoot(x);
+            access(y);
+            int l = left[y]; // The path is x - y, so x is y's whole left subtree
+            if (l != -1) parent[l] = -1;
+            left[y] = -1;
+            pull(y);
+        }
+    }
+
+    // Function to calculate the minimum cost to connect all devices.
+    // Throws ArithmeticException if the total does not fit in an int; planNetwork reports it as a long.
     public static int minCostToConnectDevices(int n, int[] modules, int[][] connections) {
+        long[] chosen = chooseEdges(n, modules, connections);
+        if (chosen.length < n) {
+            return -1; // If we cannot connect all devices
+        }
+        long totalCost = 0;
+        for (long key : chosen) {
+            totalCost += key >> 32;
+        }
+        return Math.toIntExact(totalCost);
+    }
+
+    // Same Kruskal pass, returned as an explainable bill of materials
+    public static NetworkPlan planNetwork(int n, int[] modules, int[][] connections) {
+        long[] chosen = chooseEdges(n, modules, connections);
+        if (chosen.length < n) {
+            throw new IllegalArgumentException("devices cannot all be connected");
+        }
+        return new NetworkPlan(n, connections, chosen);
+    }
+
+    // Kruskal over packed keys; returns the keys of the chosen edges in the order they were taken
+    static long[] chooseEdges(int n, int[] modules, int[][] connections) {
+        int m = n + connections.length;
+
+        // Step 1: One packed key per edge (module edges first, then connections)
+        long[] keys = new long[m];
+        for (int i = 0; i < n; i++) {
+            keys[i] = packEdge(modules[i], i);
+        }
+        for (int j = 0; j < connections.length; j++) {
+            keys[n + j] = packEdge(connections[j][2], n + j);
+        }
+
+        // Step 2: Sort edges by cost (ascending order, stable)
+        radixSortByCost(keys);
+
+        // Step 3: Use Kruskal’s algorithm to build the MST
+        UnionFind uf = new UnionFind(n);
+        long[] chosen = new long[n];
+        int edgesUsed = 0;
+
+        for (long key : keys) {
+            int index = (int) key;
+            int u, v;
+            if (index < n) {
+                u = 0;
+                v = index + 1;
+            } else {
+                u = connections[index - n][0];
+                v = connections[index - n][1];
+            }
+
+            // If adding this edge connects new components, use it
+            if (uf.union(u, v)) {
+                chosen[edgesUsed++] = key;
+
+                // If we have connected `n` devices (0 to n-1), stop early
+                if (edgesUsed == n) {
+                    return chosen;
+                }
+            }
+        }
+
+        return Arrays.copyOf(chosen, edgesUsed);
+    }
+
+    // Result of planNetwork: long totals, the chosen modules and links, and one subtotal per component.
+    // Removing the virtual node splits the tree into components that each contain exactly one module,
+    // so a component is "the devices served by one module".
+    static class NetworkPlan {
+        final long totalCost, moduleCost, linkCost;
+        final int[] moduleDevices;     // Devices that get a module, in the order Kruskal chose them
+        final int[][] links;           // Chosen connections as {u, v, cost}
+        final int[] componentOf;       // Device -> index into moduleDevices / componentCost (entry 0 unused)
+        final long[] componentCost;    // Module plus links of each component
+
+        NetworkPlan(int n, int[][] connections, long[] chosen) {
+            int moduleCount = 0;
+            for (long key : chosen) {
+                if ((int) key < n) moduleCount++;
+            }
+            moduleDevices = new int[moduleCount];
+            links = new int[n - moduleCount][];
+            long modulesTotal = 0, linksTotal = 0;
+            UnionFind served = new UnionFind(n); // Links only, no virtual node edges
+            for (int i = 0, mi = 0, li = 0; i < chosen.length; i++) {
+                int index = (int) chosen[i];
+                long cost = chosen[i] >> 32;
+                if (index < n) {
+                    moduleDevices[mi++] = index + 1;
+                    modulesTotal += cost;
+                } else {
+                    int[] conn = connections[index - n];
+                    links[li++] = new int[]{conn[0], conn[1], (int) cost};
+                    served.union(conn[0], conn[1]);
+                    linksTotal += cost;
+                }
+            }
+            moduleCost = modulesTotal;
+            linkCost = linksTotal;
+            totalCost = modulesTotal + linksTotal;
+
+            int[] componentOfRoot = new int[n + 1];
+            componentCost = new long[moduleCount];
+            for (int c = 0; c < moduleCount; c++) {
+                componentOfRoot[served.find(moduleDevices[c])] = c;
+            }
+            componentOf = new int[n + 1];
+            componentOf[0] = -1;
+            for (int d = 1; d <= n; d++) {
+                componentOf[d] = componentOfRoot[served.find(d)];
+            }
+            for (long key : chosen) {
+                int index = (int) key;
+                int device = index < n ? index + 1 : connections[index - n][0];
+                componentCost[componentOf[device]] += key >> 32;
+            }
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append("Total: ").append(totalCost).append(" (modules ").append(moduleCost)
+                    .append(", links ").append(linkCost).append(")\n");
+            for (int c = 0; c < moduleDevices.length; c++) {
+                sb.append("  Module on device ").append(moduleDevices[c]).append(": subtotal ")
+                        .append(componentCost[c]).append('\n');
+            }
+            for (int[] link : links) {
+                sb.append("  Link ").append(link[0]).append('-').append(link[1]).append(": ").append(link[2]).append('\n');
+            }
+            return sb.toString();
+        }
+    }
+
+    // Cost in the high 32 bits, edge index in the low 32 bits
+    static long packEdge(int cost, int index) {
+        return (long) cost << 32 | index;
+    }
+
+    // Stable LSD radix sort on the cost half of packed keys, 16 bits per pass
+    static void radixSortByCost(long[] keys) {
+        long[] src = keys, dst = new long[keys.length];
+        int[] count = new int[1 << 16];
+        for (int shift = 32; shift < 64; shift += 16) {
+            int flip = shift == 48 ? 0x8000 : 0; // Signed costs: negative top digits sort first
+            Arrays.fill(count, 0);
+            for (long key : src) {
+                count[((int) (key >>> shift) & 0xFFFF) ^ flip]++;
+            }
+            if (src.length > 0 && count[((int) (src[0] >>> shift) & 0xFFFF) ^ flip] == src.length) {
+                continue; // Every key has the same digit
+            }
+            for (int d = 0, sum = 0; d < count.length; d++) {
+                int c = count[d];
+                count[d] = sum;
+                sum += c;
+            }
+            for (long key : src) {
+                dst[count[((int) (key >>> shift) & 0xFFFF) ^ flip]++] = key;
+            }
+            long[] swap = src;
+            src = dst;
+            dst = swap;
+        }
+        if (src != keys) {
+            System.arraycopy(src, 0, keys, 0, keys.length);
+        }
+    }
+
+    // Filter-Kruskal on a ForkJoinPool: same total as minCostToConnectDevices, but edges that already lie
+    // inside one component are dropped before they are ever sorted
+    public static int minCostToConnectDevicesParallel(int n, int[] modules, int[][] connections, ForkJoinPool pool) {
+        return new FilterKruskal(n, modules, connections, pool).run();
+    }
+
+    static class FilterKruskal {
+        static final int CHUNK = 1 << 14;     // Keys per fork-join leaf
+        static final int SAMPLES = 63;        // Keys sampled to choose a pivot
+
+        final int n;
+        final int[][] connections;
+        final ForkJoinPool pool;
+        final long[] keys, scratch;
+        final UnionFind uf;
+        final int baseSize;                   // Ranges this small are sorted and scanned directly
+        final Random random = new Random(1);
+        long totalCost;
+        int edgesUsed;
+
+        FilterKruskal(int n, int[] modules, int[][] connections, ForkJoinPool pool) {
+            this.n = n;
+            this.connections = connections;
+            this.pool = pool;
+            int m = n + connections.length;
+            keys = new long[m];
+            scratch = new long[m];
+            uf = new UnionFind(n);
+            baseSize = Math.max(CHUNK, n);
+            parallelFor(0, m, (from, to) -> {
+                for (int i = from; i < to; i++) {
+                    keys[i] = packEdge(i < n ? modules[i] : connections[i - n][2], i);
+                }
+            });
+        }
+
+        int run() {
+            filterKruskal(0, keys.length);
+            return edgesUsed == n ? Math.toIntExact(totalCost) : -1;
+        }
+
+        private void filterKruskal(int lo, int hi) {
+            if (edgesUsed == n || lo == hi) return;
+            if (hi - lo <= baseSize) {
+                kruskal(lo, hi);
+                return;
+            }
+            long pivot = choosePivot(lo, hi);
+            int mid = partition(lo, hi, pivot);
+            if (mid == lo || mid == hi) { // Degenerate sample, sort the whole range instead
+                kruskal(lo, hi);
+                return;
+            }
+            filterKruskal(lo, mid);
+            filterKruskal(mid, filter(mid, hi));
+        }
+
+        // Plain Kruskal over one range: parallel sort, then sequential unions
+        private void kruskal(int lo, int hi) {
+            Arrays.parallelSort(keys, lo, hi);
+            for (int i = lo; i < hi && edgesUsed < n; i++) {
+                long key = keys[i];
+                int index = (int) key;
+                if (uf.union(from(index), to(index))) {
+                    totalCost += key >> 32;
+                    edgesUsed++;
+                }
+            }
+        }
+
+        private long choosePivot(int lo, int hi) {
+            long[] sample = new long[SAMPLES];
+            for (int i = 0; i < SAMPLES; i++) {
+                sample[i] = keys[lo + random.nextInt(hi - lo)];
+            }
+            Arrays.sort(sample);
+            return sample[SAMPLES / 2];
+        }
+
+        // Keys <= pivot move to the front (chunk counts, prefix sums, parallel scatter); returns the split
+        private int partition(int lo, int hi, long pivot) {
+            int chunks = (hi - lo + CHUNK - 1) / CHUNK;
+            int[] low = new int[chunks + 1], high = new int[chunks + 1];
+            parallelFor(lo, hi, (from, to) -> {
+                int count = 0;
+                for (int i = from; i < to; i++) {
+                    if (keys[i] <= pivot) count++;
+                }
+                int c = (from - lo) / CHUNK;
+                low[c + 1] = count;
+                high[c + 1] = to - from - count;
+            });
+            for (int c = 0; c < chunks; c++) {
+                low[c + 1] += low[c];
+                high[c + 1] += high[c];
+            }
+            int mid = lo + low[chunks];
+            parallelFor(lo, hi, (from, to) -> {
+                int c = (from - lo) / CHUNK;
+                int l = lo + low[c], h = mid + high[c];
+                for (int i = from; i < to; i++) {
+                    long key = keys[i];
+                    if (key <= pivot) scratch[l++] = key;
+                    else scratch[h++] = key;
+                }
+            });
+            parallelFor(lo, hi, (from, to) -> System.arraycopy(scratch, from, keys, from, to - from));
+            return mid;
+        }
+
+        // Drops keys whose endpoints are already connected; survivors are packed from lo, returns their end.
+        // Runs between Kruskal steps, so the union-find is only read here.
+        private int filter(int lo, int hi) {
+            if (edgesUsed == n) return lo;
+            int chunks = (hi - lo + CHUNK - 1) / CHUNK;
+            int[] kept = new int[chunks];
+            parallelFor(lo, hi, (from, to) -> {
+                int out = from;
+                for (int i = from; i < to; i++) {
+                    int index = (int) keys[i];
+                    if (uf.root(from(index)) != uf.root(to(index))) keys[out++] = keys[i];
+                }
+                kept[(from - lo) / CHUNK] = out - from;
+            });
+            int end = lo;
+            for (int c = 0; c < chunks; c++) {
+                System.arraycopy(keys, lo + c * CHUNK, keys, end, kept[c]); // Destination never passes the source
+                end += kept[c];
+            }
+            return end;
+        }
+
+        private int from(int index) {
+            return index < n ? 0 : connections[index - n][0];
+        }
+
+        private int to(int index) {
+            return index < n ? index + 1 : connections[index - n][1];
+        }
+
+        interface RangeBody {
+            void apply(int from, int to);
+        }
+
+        // Runs body over CHUNK-aligned pieces of [lo, hi) on the pool
+        private void parallelFor(int lo, int hi, RangeBody body) {
+            pool.invoke(new RangeTask(lo, hi, body));
+        }
+
+        static class RangeTask extends RecursiveAction {
+            private static final long serialVersionUID = 1L;
+
+            final int lo, hi;
+            final RangeBody body;
+
+            RangeTask(int lo, int hi, RangeBody body) {
+                this.lo = lo;
+                this.hi = hi;
+                this.body = body;
+            }
+
+            @Override
+            protected void compute() {
+                if (hi - lo <= CHUNK) {
+                    body.apply(lo, hi);
+                    return;
+                }
+                int chunks = (hi - lo + CHUNK - 1) / CHUNK;
+                int mid = lo + (chunks / 2) * CHUNK; // Split on a chunk boundary so leaves line up with chunk indexes
+                invokeAll(new RangeTask(lo, mid, body), new RangeTask(mid, hi, body));
+            }
+        }
+    }
+
+    // Original List<int[]> + Comparator version, kept as the benchmark baseline
+    static int minCostToConnectDevicesBoxed(int n, int[] modules, int[][] connections) {
         List<int[]> edges = new ArrayList<>(); // List of edges (device1, device2, cost)
 
         // Step 1: Add virtual edges connecting each device to a virtual node (device 0)
@@ -110,7 +749,205 @@ public class MinimumNetworkCost {
         return -1; // If we cannot connect all devices
     }
 
-    public static void main(String[] args) {
+    // Random instance: modules cost 1..1,000,000, links cost 1..1,000 so that most devices link rather than install
+    static int[] randomModules(int n, Random random) {
+        int[] modules = new int[n];
+        for (int i = 0; i < n; i++) {
+            modules[i] = 1 + random.nextInt(1_000_000);
+        }
+        return modules;
+    }
+
+    static int[][] randomConnections(int n, int edgesPerDevice, Random random) {
+        int[][] connections = new int[n * edgesPerDevice][];
+        for (int i = 0; i < connections.length; i++) {
+            connections[i] = new int[]{1 + random.nextInt(n), 1 + random.nextInt(n), 1 + random.nextInt(1000)};
+        }
+        return connections;
+    }
+
+    // Times the primitive Kruskal against the List<int[]> baseline on the same input
+    static void benchmark(int n, int edgesPerDevice) {
+        Random random = new Random(42);
+        int[] modules = randomModules(n, random);
+        int[][] connections = randomConnections(n, edgesPerDevice, random);
+        System.out.printf("%d devices, %d connections%n", n, connections.length);
+
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            int boxed = minCostToConnectDevicesBoxed(n, modules, connections);
+            long boxedNanos = System.nanoTime() - start;
+            start = System.nanoTime();
+            int primitive = minCostToConnectDevices(n, modules, connections);
+            long primitiveNanos = System.nanoTime() - start;
+            System.out.printf("round %d: boxed %d in %.0fms, primitive %d in %.0fms%n",
+                    round, boxed, boxedNanos / 1e6, primitive, primitiveNanos / 1e6);
+        }
+    }
+
+    // Replays a random instance as events and compares per-event cost with one batch recomputation
+    static void benchmarkOnline(int n, int edgesPerDevice) {
+        Random random = new Random(42);
+        int[] modules = randomModules(n, random);
+        int[][] connections = randomConnections(n, edgesPerDevice, random);
+        System.out.printf("%d devices, %d connections%n", n, connections.length);
+
+        long start = System.nanoTime();
+        OnlineNetworkCost online = new OnlineNetworkCost();
+        for (int module : modules) {
+            online.addDevice(module);
+        }
+        for (int[] conn : connections) {
+            online.addConnection(conn[0], conn[1], conn[2]);
+        }
+        long onlineNanos = System.nanoTime() - start;
+        start = System.nanoTime();
+        int batch = minCostToConnectDevices(n, modules, connections);
+        long batchNanos = System.nanoTime() - start;
+        System.out.printf("online %d in %.0fms (%.2fus per event), one batch recompute %d in %.0fms%n",
+                online.totalCost(), onlineNanos / 1e6, onlineNanos / 1e3 / (n + connections.length),
+                batch, batchNanos / 1e6);
+    }
+
+    // Sequential radix Kruskal against parallel filter-Kruskal at 10-100 connections per device
+    static void benchmarkFilter(int n, int threads) {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        for (int edgesPerDevice : new int[]{10, 25, 50, 100}) {
+            Random random = new Random(42);
+            int[] modules = randomModules(n, random);
+            int[][] connections = randomConnections(n, edgesPerDevice, random);
+            for (int round = 0; round < 3; round++) {
+                long start = System.nanoTime();
+                int sequential = minCostToConnectDevices(n, modules, connections);
+                long sequentialNanos = System.nanoTime() - start;
+                start = System.nanoTime();
+                int parallel = minCostToConnectDevicesParallel(n, modules, connections, pool);
+                long parallelNanos = System.nanoTime() - start;
+                System.out.printf("%d devices x %d: radix %d in %.0fms, filter-Kruskal (%d threads) %d in %.0fms%n",
+                        n, edgesPerDevice, sequential, sequentialNanos / 1e6, threads, parallel, parallelNanos / 1e6);
+            }
+        }
+        pool.shutdown();
+    }
+
+    // Concurrent unions and sameSet queries from several threads, checked against a sequential UnionFind
+    static void stressConcurrentUnionFind(int threads, int rounds) throws InterruptedException {
+        Random random = new Random(7);
+        for (int round = 0; round < rounds; round++) {
+            int n = 1 + random.nextInt(round % 2 == 0 ? 64 : 100_000); // Small rounds force heavy contention
+            int[][] pairs = new int[2 * n][];
+            for (int i = 0; i < pairs.length; i++) {
+                pairs[i] = new int[]{random.nextInt(n + 1), random.nextInt(n + 1)};
+            }
+            ConcurrentUnionFind shared = new ConcurrentUnionFind(n + 1); // Same 0..n range as UnionFind(n)
+            AtomicInteger merges = new AtomicInteger();
+            List<int[]> seenTogether = Collections.synchronizedList(new ArrayList<>());
+            Thread[] workers = new Thread[threads];
+            for (int t = 0; t < threads; t++) {
+                int first = t;
+                workers[t] = new Thread(() -> {
+                    Random local = new Random(first);
+                    for (int i = first; i < pairs.length; i += threads) {
+                        if (shared.union(pairs[i][0], pairs[i][1])) merges.incrementAndGet();
+                        int a = local.nextInt(n + 1), b = local.nextInt(n + 1);
+                        if (shared.sameSet(a, b)) seenTogether.add(new int[]{a, b});
+                    }
+                });
+                workers[t].start();
+            }
+            for (Thread worker : workers) {
+                worker.join();
+            }
+
+            UnionFind expected = new UnionFind(n);
+            int expectedComponents = n + 1;
+            for (int[] pair : pairs) {
+                if (expected.union(pair[0], pair[1])) expectedComponents--;
+            }
+            if (shared.componentCount() != expectedComponents || merges.get() != n + 1 - expectedComponents) {
+                throw new IllegalStateException("round " + round + ": " + shared.componentCount()
+                        + " components, expected " + expectedComponents);
+            }
+            int[] rootFor = new int[n + 1]; // Expected root -> concurrent root, must be a bijection
+            Arrays.fill(rootFor, -1);
+            for (int x = 0; x <= n; x++) {
+                int e = expected.find(x), c = shared.find(x);
+                if (rootFor[e] == -1) rootFor[e] = c;
+                else if (rootFor[e] != c) throw new IllegalStateException("round " + round + ": sets differ at " + x);
+            }
+            for (int[] pair : seenTogether) { // Merges are permanent
+                if (expected.find(pair[0]) != expected.find(pair[1])) {
+                    throw new IllegalStateException("round " + round + ": false sameSet " + pair[0] + "-" + pair[1]);
+                }
+            }
+        }
+        System.out.printf("stress: %d rounds on %d threads passed%n", rounds, threads);
+    }
+
+    // Throughput of a 50/50 union/sameSet mix for 1, 2, 4, ... up to maxThreads threads
+    static void benchmarkConcurrentUnionFind(int n, int operations, int maxThreads) throws InterruptedException {
+        for (int threads = 1; ; threads = Math.min(threads * 2, maxThreads)) {
+            ConcurrentUnionFind shared = new ConcurrentUnionFind(n + 1); // Same 0..n range as UnionFind(n)
+            CountDownLatch start = new CountDownLatch(1);
+            Thread[] workers = new Thread[threads];
+            int perThread = operations / threads;
+            for (int t = 0; t < threads; t++) {
+                int seed = t;
+                workers[t] = new Thread(() -> {
+                    Random local = new Random(seed);
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < perThread; i++) {
+                        int a = local.nextInt(n + 1), b = local.nextInt(n + 1);
+                        if ((i & 1) == 0) shared.union(a, b);
+                        else shared.sameSet(a, b);
+                    }
+                });
+                workers[t].start();
+            }
+            long begin = System.nanoTime();
+            start.countDown();
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            long nanos = System.nanoTime() - begin;
+            System.out.printf("%d threads: %.1f Mops/s, %d components left%n",
+                    threads, (double) perThread * threads / nanos * 1e3, shared.componentCount());
+            if (threads == maxThreads) break;
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int cores = Runtime.getRuntime().availableProcessors();
+        if (args.length > 0 && args[0].equals("stress")) {
+            stressConcurrentUnionFind(args.length > 1 ? Integer.parseInt(args[1]) : Math.max(4, cores), 200);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("bench-concurrent")) {
+            benchmarkConcurrentUnionFind(args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000,
+                    args.length > 2 ? Integer.parseInt(args[2]) : 20_000_000,
+                    args.length > 3 ? Integer.parseInt(args[3]) : cores);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("bench-filter")) {
+            benchmarkFilter(args.length > 1 ? Integer.parseInt(args[1]) : 200_000,
+                    args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors());
+            return;
+        }
+        if (args.length > 0 && args[0].equals("bench-online")) {
+            benchmarkOnline(args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000,
+                    args.length > 2 ? Integer.parseInt(args[2]) : 4);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("bench")) {
+            benchmark(args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000,
+                    args.length > 2 ? Integer.parseInt(args[2]) : 4);
+            return;
+        }
+
         // Test Case 1
         int n1 = 3;
         int[] modules1 = {1, 2, 2};
@@ -128,5 +965,36 @@ public class MinimumNetworkCost {
         // Expected Output: 5
         // Explanation: Install module on device 4 (cost 2) and use connections (2-3: cost 1, 1-2: cost 1, 3-4: cost 1).
         // Total cost: 2 + 1 + 1 + 1 = 5
+
+        // Test Case 2, as a bill of materials
+        System.out.print(planNetwork(n2, modules2, connections2));
+        // Expected Output:
+        // Total: 5 (modules 2, links 3)
+        //   Module on device 4: subtotal 5
+        //   Link 1-2: 1
+        //   Link 2-3: 1
+        //   Link 3-4: 1
+
+        // Costs whose sum overflows an int
+        int[] modules3 = {2_000_000_000, 2_000_000_000};
+        System.out.println(planNetwork(2, modules3, new int[0][]).totalCost);
+        // Expected Output: 4000000000 (minCostToConnectDevices throws ArithmeticException here)
+
+        // Test Case 2, online: the same devices and connections arriving as events
+        OnlineNetworkCost online = new OnlineNetworkCost();
+        for (int module : modules2) {
+            online.addDevice(module);
+        }
+        for (int[] conn : connections2) {
+            online.addConnection(conn[0], conn[1], conn[2]);
+        }
+        System.out.println(online.totalCost());
+        // Expected Output: 5
+        online.addDevice(1);              // Device 5
+        online.addConnection(5, 1, 1);
+        System.out.println(online.totalCost());
+        // Expected Output: 5
+        // Explanation: Device 5's module (cost 1) and link 5-1 (cost 1) replace device 4's module (cost 2).
+        // Total cost: 1 + 1 + 1 + 1 + 1 = 5
     }
 }
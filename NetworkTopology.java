@@ -1,8 +1,37 @@
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
+import java.awt.image.BufferedImage;
 import java.util.*;
 import java.util.List;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.IntConsumer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 /*
@@ -49,6 +78,122 @@ Algorithm for Network Topology Optimizer:
 
 7. **Main Function**  
    - Launch the GUI using `SwingUtilities.invokeLater()`.  
+   - `java NetworkTopologyGUI bench-core [nodes] [edgesPerNode] [legacyNodes]` runs the scale benchmark headless.  
+   - `java NetworkTopologyGUI bench-dijkstra [nodes] [edgesPerNode] [queries]` compares shortest-path engines.  
+   - `java NetworkTopologyGUI bench-boruvka [nodes] [edgesPerNode]` times parallel MST across thread counts.  
+   - `java NetworkTopologyGUI bench-pareto [nodes] [edgesPerNode] [queries]` times Pareto frontier queries.  
+   - `java NetworkTopologyGUI bench-matrix [nodes] [edgesPerNode] [size] [file]` builds a size x size distance matrix.  
+   - `java NetworkTopologyGUI bench-cache [nodes] [edgesPerNode] [queries] [pairs]` measures cached shortest-path queries.  
+   - `java NetworkTopologyGUI bench-dynamic [nodes] [edgesPerNode] [inserts]` times incremental MST updates.  
+   - `java NetworkTopologyGUI bench-render [nodes] [edgesPerNode]` times full and dirty-region redraws headless.  
+   - `java NetworkTopologyGUI bench-spatial [nodes] [queries] [k]` compares index queries with linear scans.  
+   - `java NetworkTopologyGUI bench-io [nodes] [edgesPerNode]` times text import and snapshot reopen.  
+
+8. **Compact Graph Core**  
+   - `CompactGraph` interns node names to int ids (0, 1, 2, ... in insertion order).  
+   - Edges are appended to primitive arrays (`edgeU`, `edgeV`, `edgeCost`, `edgeBandwidth`) as `addEdge` is called.  
+   - Algorithms run on a `CsrGraph` view: `offsets[v]..offsets[v+1]` indexes `targets`, `costs`, `bandwidths`.  
+     The view is rebuilt by counting sort in O(V + E) on the first query after a mutation.  
+   - `Graph` keeps a `CompactGraph` in step with its maps, and `primMST()` / `dijkstra()` run on it with  
+     primitive arrays and heaps, so no objects are allocated per edge.  
+
+9. **Shortest Path Engine**  
+   - Paths are ordered by total cost, then total latency (lexicographic).  
+   - `ShortestPathEngine` keeps `long` cost/latency and `int` predecessor arrays and an `IndexedDaryHeap`  
+     (4-ary, one slot per node, decrease-key), so each node is queued at most once.  
+   - Arrays are reused between queries; a per-query stamp marks which entries are valid.  
+   - The result includes the node path, rebuilt by walking predecessors back from the target.  
+
+10. **Spanning Forest**  
+   - Prim's algorithm keeps one `IndexedDaryHeap` slot per vertex keyed by its cheapest edge into the tree  
+     and lowers it with decrease-key, so the heap never holds more than V entries.  
+   - Edges are ranked by (cost, latency, edge id), a total order, so the forest is unique.  
+   - Each unvisited vertex starts a new tree, so disconnected graphs give a minimum spanning forest  
+     with per-component totals and the list of chosen edges.  
+
+11. **Parallel Boruvka**  
+   - Each round, a fork-join pass over the live edges records the cheapest outgoing edge of every  
+     component (CAS into an `AtomicIntegerArray`), then a second pass unions along those edges with a  
+     lock-free union-find (`ConcurrentUnionFind.java`) and marks the ones that merged two components.  
+   - Edges inside one component are dropped between rounds, and components at least halve each round.  
+   - With the same (cost, latency, edge id) order as Prim, the forest is identical to `spanningForest()`.  
+
+12. **Pareto Paths**  
+   - `ParetoSearch` returns every path whose (cost, latency) pair no other path beats on both.  
+   - Labels (node, cost, latency, predecessor) live in parallel primitive arrays, reused across queries.  
+     A `LongHeap` of packed (cost, label) keys pops them by cost (a `PairHeap` when costs are too large to  
+     pack), with lazy deletion of labels that were dominated after being queued.  
+   - A new label is dropped if a label at its node, or one already at the target, dominates it.  
+     Labels it dominates are unlinked on the spot.  
+   - `maxLabelsPerNode` bounds each node's label set (and so the frontier). It is a parameter of  
+     `paretoPaths`, and the returned `ParetoFrontier` is flagged `truncated` when the bound discarded a label.  
+   - Costs and latencies are summed in longs. Negative costs or non-positive bandwidths are rejected,  
+     because label setting is only correct when no edge makes a path cheaper or faster.  
+
+13. **Distance Matrix**  
+   - `DistanceMatrix.compute` forks one task per source on a `ForkJoinPool`. All tasks share the read-only  
+     `CsrGraph` snapshot, and each worker thread reuses one `ShortestPathEngine`.  
+   - A search stops once every requested target is settled.  
+   - Costs are stored as a row-major `int` matrix (-1 = unreachable) outside the Java heap: a direct buffer,  
+     or a memory-mapped file that `DistanceMatrix.open` maps again later without recomputing.  
+   - File layout (little-endian ints): magic, version, rows, cols, source ids, target ids, cells.  
+
+14. **Shortest Path Cache**  
+   - `Graph` keeps a `version` counter that `addNode` / `addEdge` increment.  
+   - `PathCache` is an access-ordered `LinkedHashMap` from (start, end) to the last result and the version  
+     it was computed at, bounded by an estimate of its size in bytes (least recently used evicted first).  
+   - An entry from an older version counts as a miss and is dropped when looked up, so a mutation  
+     invalidates the whole cache in O(1).  
+
+15. **Incremental MST**  
+   - After `enableDynamicMST()`, a `DynamicForest` keeps the minimum spanning forest up to date as edges arrive.  
+   - The forest is stored in a link-cut tree. Each tree edge is its own tree node between its endpoints,  
+     and every splay subtree tracks its highest-ranked edge, so the maximum edge on a path costs O(log V) amortized.  
+   - A new edge joining two trees is linked. One that closes a cycle replaces the cycle's highest-ranked edge  
+     if it ranks lower (cycle property). Edges use the same (cost, latency, edge id) order as Prim, so  
+     the forest always equals `spanningForest()` computed from scratch.  
+
+16. **Rendering**  
+   - `TopologyRenderer` keeps its own snapshot of node positions and undirected edges, extended by `sync()`  
+     after each mutation. Each edge is drawn once, and its label only when the edge is long enough to fit it.  
+   - The snapshot is bucketed in a `GridIndex` of 64 px cells: an edge goes into the cells its segment  
+     crosses (very long edges are kept in a separate list), so a region query touches only nearby elements.  
+   - Changed areas are merged into a dirty rectangle. A background thread copies the geometry inside that  
+     rectangle under the renderer lock, draws it into a tile after releasing the lock, and the EDT copies the  
+     tile into the cached `BufferedImage`.  
+     `paintComponent` just draws the cached image.  
+
+17. **Spatial Index**  
+   - `SpatialIndex` buckets node positions in a hash grid of square cells. `CompactGraph` builds it on first use  
+     and then updates it in `addNode`, including when a node moves.  
+   - Nearest and k-nearest queries scan rings of cells outward from the query point. They stop once  
+     the next ring lies farther away than the current answer, so cost depends on local density, not graph size.  
+     Rings are clipped to the occupied cell range, and once they have cost more lookups than there are occupied  
+     cells, the remaining cells are scanned once instead. Sparse maps and far outliers stay O(occupied cells).  
+   - Radius and rectangle queries visit only the covered cells.  
+   - It serves click selection, viewport culling of nodes, and "connect k nearest" bulk edge creation.  
+
+18. **Bulk Import and Snapshots**  
+   - `Graph.importFile` streams a text topology straight into the `CompactGraph`, parsing fields from raw  
+     bytes without splitting lines into strings. Formats:  
+     `node,<name>,<x>,<y>`, `edge,<from>,<to>,<cost>,<bandwidth>`, or bare `<from>,<to>,<cost>,<bandwidth>`.  
+     Fields are separated by commas or whitespace, `#` starts a comment, and unknown nodes are created at (0, 0).  
+   - `Graph`'s name-keyed maps are rebuilt lazily after a bulk load, only when something asks for them.  
+   - `writeSnapshot` / `openSnapshot` use a little-endian binary file. Opening maps it read-only and serves the  
+     node and edge columns straight from the mapping; they are copied to the heap only on the first mutation.  
+     Only names are decoded. Counts, offsets and edge endpoints are validated on open. Layout:  
+     magic, version, node count, edge count, xs, ys, edgeU, edgeV, edgeCost, edgeBandwidth,  
+     name offsets (node count + 1), UTF-8 name bytes.  
+
+19. **Headless Batch Mode**  
+   - `TopologyBatch` answers `mst` and `path <from> <to>` queries against one immutable `CsrGraph` snapshot,  
+     with no Swing involved.  
+   - Queries are read as a stream and run on a fixed pool. A `Semaphore` caps the number of queries in flight,  
+     so input of any length needs bounded memory. Each worker thread reuses one `ShortestPathEngine`, and the  
+     MST of the snapshot is computed on the first `mst` query and reused by the rest.  
+   - Every result is written as soon as it completes (tab-separated, tagged with its input line number).  
+     A summary follows with p50/p90/p99/max latency per query type. A failed write stops the batch with that error.  
+   - CLI: `java NetworkTopologyGUI batch <topology.csv|.ntgs> <queries|-> [threads]`.  
 */
 
 
@@ -56,37 +201,197 @@ Algorithm for Network Topology Optimizer:
 class Graph {
     private Map<String, Point> nodes = new HashMap<>();   // Stores nodes and their positions
     private Map<String, List<Edge>> edges = new HashMap<>();   // Stores edges between nodes
+    private final CompactGraph core;   // Int-id CSR copy used by the algorithms
+    private final PathCache pathCache = new PathCache(8 << 20);   // Recent dijkstra results
+    private long version;   // Incremented by every mutation
+    private boolean mapsStale;   // nodes/edges lag behind core after a bulk load; see ensureMaps
 
+    Graph() {
+        this(new CompactGraph());
+    }
+
+    private Graph(CompactGraph core) {
+        this.core = core;
+        this.mapsStale = core.nodeCount() > 0;
+    }
 
     // Add a node with name and position
     public void addNode(String name, int x, int y) {  
-        nodes.put(name, new Point(x, y));  // Store the node with its coordinates
-        edges.putIfAbsent(name, new ArrayList<>());  // Initialize edge list for the node 
+        if (!mapsStale) {
+            nodes.put(name, new Point(x, y));  // Store the node with its coordinates
+            edges.putIfAbsent(name, new ArrayList<>());  // Initialize edge list for the node 
+        }
+        core.addNode(name, x, y);
+        version++;
     }
 
     // Add an edge between two nodes with cost and bandwidth
     public void addEdge(String from, String to, int cost, int bandwidth) {
-        edges.get(from).add(new Edge(from, to, cost, bandwidth));  // Add edge in both directions
-        edges.get(to).add(new Edge(to, from, cost, bandwidth));   // Since the graph is undirected
+        if (!mapsStale) {
+            edges.get(from).add(new Edge(from, to, cost, bandwidth));  // Add edge in both directions
+            edges.get(to).add(new Edge(to, from, cost, bandwidth));   // Since the graph is undirected
+        }
+        core.addEdge(from, to, cost, bandwidth);
+        version++;
+    }
+
+    public boolean hasNode(String name) {
+        return core.id(name) >= 0;
+    }
+
+    // Stream nodes and edges from a text file (see header section 18); returns records loaded
+    public int importFile(Path file) throws IOException {
+        int records = TopologyFiles.importEdgeList(core, file);
+        mapsStale = true;
+        version++;
+        return records;
+    }
+
+    public void exportFile(Path file) throws IOException {
+        TopologyFiles.exportEdgeList(core, file);
+    }
+
+    public void writeSnapshot(Path file) throws IOException {
+        core.writeSnapshot(file);
+    }
+
+    // Graph backed by a snapshot written by writeSnapshot
+    public static Graph openSnapshot(Path file) throws IOException {
+        return new Graph(CompactGraph.openSnapshot(file));
+    }
+
+    // Rebuild the name-keyed maps from core if a bulk load bypassed them
+    private void ensureMaps() {
+        if (!mapsStale) return;
+        nodes.clear();
+        edges.clear();
+        for (int v = 0; v < core.nodeCount(); v++) {
+            nodes.put(core.name(v), new Point(core.x(v), core.y(v)));
+            edges.put(core.name(v), new ArrayList<>());
+        }
+        for (int e = 0; e < core.edgeCount(); e++) {
+            String from = core.name(core.edgeFrom(e)), to = core.name(core.edgeTo(e));
+            edges.get(from).add(new Edge(from, to, core.edgeCost(e), core.edgeBandwidth(e)));
+            edges.get(to).add(new Edge(to, from, core.edgeCost(e), core.edgeBandwidth(e)));
+        }
+        mapsStale = false;
+    }
+
+    // Number of mutations so far; results computed at an older version may be stale
+    public long getVersion() {
+        return version;
+    }
+
+    public PathCache getPathCache() {
+        return pathCache;
+    }
+
+    // Closest node strictly within maxDistance of (x, y), or null
+    public String nearestNode(int x, int y, double maxDistance) {
+        int id = core.spatialIndex().nearest(x, y, maxDistance, -1);
+        return id < 0 ? null : core.name(id);
+    }
+
+    public List<String> nodesWithin(int x, int y, double radius) {
+        List<String> result = new ArrayList<>();
+        core.spatialIndex().withinRadius(x, y, radius, id -> result.add(core.name(id)));
+        return result;
+    }
+
+    public List<String> nodesInRect(Rectangle area) {
+        List<String> result = new ArrayList<>();
+        core.spatialIndex().inRect(area.x, area.y, area.x + area.width, area.y + area.height, id -> result.add(core.name(id)));
+        return result;
+    }
+
+    // Link every node to its k nearest neighbours that it is not already linked to. Cost is the
+    // rounded distance (at least 1). Returns the number of edges added.
+    public int connectKNearest(int k, int bandwidth) {
+        ensureMaps();
+        SpatialIndex index = core.spatialIndex();
+        int added = 0;
+        for (int v = 0; v < core.nodeCount(); v++) {
+            String from = core.name(v);
+            for (int u : index.kNearest(core.x(v), core.y(v), k, v)) {
+                String to = core.name(u);
+                boolean linked = false;
+                for (Edge edge : edges.get(from)) linked |= edge.to.equals(to);
+                if (linked) continue;
+                int cost = (int) Math.max(1, Math.round(Math.hypot(core.x(u) - core.x(v), core.y(u) - core.y(v))));
+                addEdge(from, to, cost, bandwidth);
+                added++;
+            }
+        }
+        return added;
+    }
+
+    // Compact int-id representation of this graph
+    public CompactGraph getCore() {
+        return core;
     }
 
     // Get all edges connected to a node
     public List<Edge> getEdges(String node) {
+        ensureMaps();
         return edges.getOrDefault(node, new ArrayList<>());
     }
 
     // Get all nodes in the graph
     public Map<String, Point> getNodes() {
+        ensureMaps();
         return nodes;
     }
 
     // Get all edges in the graph
     public Set<Edge> getAllEdges() {
+        ensureMaps();
         return edges.values().stream().flatMap(List::stream).collect(Collectors.toSet());
     }
 
-    // Prim's algorithm for MST considering cost and latency (bandwidth)
+    // Prim's algorithm for MST considering cost and latency (bandwidth); totals over all components
     public NetworkResult primMST() {
+        return core.primMST();
+    }
+
+    // Minimum spanning forest with the chosen edges and per-component totals
+    public SpanningForest spanningForest() {
+        return core.spanningForest();
+    }
+
+    // Maintain the MST incrementally on every addEdge instead of recomputing it per query
+    public void enableDynamicMST() {
+        core.enableDynamicMST();
+    }
+
+    // Same forest as spanningForest(), computed with parallel Boruvka rounds on the common pool
+    public SpanningForest parallelSpanningForest() {
+        return core.parallelSpanningForest(ForkJoinPool.commonPool());
+    }
+
+    // Dijkstra's algorithm for the shortest path: cheapest cost, ties broken by latency, with the node path
+    // Results are cached per (start, end) until the next mutation; each caller gets its own copy
+    public NetworkResult dijkstra(String start, String end) {
+        if (start == null || end == null) return core.dijkstra(start, end);
+        NetworkResult cached = pathCache.get(start, end, version);
+        if (cached != null) return cached.copy();   // Callers may modify what they get back
+        NetworkResult result = core.dijkstra(start, end);
+        pathCache.put(start, end, version, result.copy());
+        return result;
+    }
+
+    // Cost/latency trade-off paths from start to end, cheapest first (empty if unreachable)
+    public ParetoFrontier paretoPaths(String start, String end, int maxLabelsPerNode) {
+        return core.paretoPaths(start, end, maxLabelsPerNode);
+    }
+
+    // Cheapest-path cost from every source to every target; written to file when it is not null
+    public DistanceMatrix distanceMatrix(List<String> sources, List<String> targets, Path file) throws IOException {
+        return core.distanceMatrix(sources, targets, ForkJoinPool.commonPool(), file);
+    }
+
+    // Original object-based Prim's algorithm, kept as the benchmark baseline
+    NetworkResult primMSTOnMaps() {
+        ensureMaps();
         if (nodes.isEmpty()) return new NetworkResult(0, 0);  // If graph is empty, return zero cost and latency
         
         // Priority Queue to sort edges based on cost and bandwidth
@@ -112,8 +417,9 @@ class Graph {
         return new NetworkResult(totalCost, totalLatency);   // Return the total MST cost and latency
     }
 
-    // Dijkstra's algorithm for the shortest path considering cost and latency
-    public NetworkResult dijkstra(String start, String end) {
+    // Original object-based Dijkstra, kept as the benchmark baseline
+    NetworkResult dijkstraOnMaps(String start, String end) {
+        ensureMaps();
         if (!edges.containsKey(start) || !edges.containsKey(end)) return new NetworkResult(-1, -1);
         
         // Priority Queue to sort edges based on cost
@@ -155,6 +461,77 @@ class Graph {
     }
 }
 
+// LRU cache of shortest-path results keyed by (start, end), bounded by estimated bytes
+class PathCache {
+    private final long maxBytes;
+    private final LinkedHashMap<String, CachedPath> results = new LinkedHashMap<>(256, 0.75f, true);
+    private long bytes;
+    private long lookups, hits, stale, evictions;
+
+    private static class CachedPath {
+        final long version;
+        final NetworkResult result;
+        final long bytes;
+
+        CachedPath(String key, long version, NetworkResult result) {
+            this.version = version;
+            this.result = result;
+            long size = 2L * key.length() + 96;   // Key chars, entry, result and list headers
+            if (result.path != null) {
+                for (String node : result.path) size += 2L * node.length() + 48;
+            }
+            this.bytes = size;
+        }
+    }
+
+    PathCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    // Result cached at this graph version, or null
+    synchronized NetworkResult get(String start, String end, long version) {
+        lookups++;
+        String key = key(start, end);
+        CachedPath entry = results.get(key);
+        if (entry == null) return null;
+        if (entry.version != version) {
+            stale++;
+            bytes -= entry.bytes;
+            results.remove(key);
+            return null;
+        }
+        hits++;
+        return entry.result;
+    }
+
+    synchronized void put(String start, String end, long version, NetworkResult result) {
+        String key = key(start, end);
+        CachedPath entry = new CachedPath(key, version, result);
+        if (entry.bytes > maxBytes) return;
+        CachedPath old = results.put(key, entry);
+        bytes += entry.bytes - (old == null ? 0 : old.bytes);
+        Iterator<CachedPath> eldest = results.values().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            bytes -= eldest.next().bytes;
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    synchronized double hitRate() {
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    synchronized String stats() {
+        return String.format("path cache: entries=%d bytes=%d lookups=%d hits=%d (%.1f%%) stale=%d evictions=%d",
+                results.size(), bytes, lookups, hits, 100 * hitRate(), stale, evictions);
+    }
+
+    private static String key(String start, String end) {
+        return start + '\u0000' + end;
+    }
+}
+
 // Edge class representing a connection between two nodes
 class Edge {
     String from, to;
@@ -180,130 +557,3144 @@ class Edge {
 class NetworkResult {
     int totalCost;
     int totalLatency;
+    List<String> path;   // Node sequence for shortest paths; null otherwise
 
     NetworkResult(int totalCost, int totalLatency) {
         this.totalCost = totalCost;
         this.totalLatency = totalLatency;
     }
 
+    NetworkResult(int totalCost, int totalLatency, List<String> path) {
+        this(totalCost, totalLatency);
+        this.path = path;
+    }
+
+    // Independent copy; the path list is unmodifiable, so copies can share it
+    NetworkResult copy() {
+        return new NetworkResult(totalCost, totalLatency, path == null ? null : List.copyOf(path));
+    }
+
     @Override
     public String toString() {
-        return "Total Cost: " + totalCost + ", Total Latency: " + totalLatency;
+        String result = "Total Cost: " + totalCost + ", Total Latency: " + totalLatency;
+        return path == null ? result : result + ", Path: " + String.join(" -> ", path);
     }
 }
 
-// GUI class for network topology visualization and interaction
-class NetworkTopologyGUI extends JFrame {
-    private Graph graph = new Graph();  // Graph instance
-    private JTextArea outputArea = new JTextArea(10, 40);   // Output text area
-    private DrawPanel drawPanel = new DrawPanel();  // Panel for drawing network
+// Pareto-optimal paths between two nodes, cheapest first
+class ParetoFrontier {
+    // One path; sums are longs since a long path of int-weighted edges can pass the int range
+    static final class Route {
+        final long totalCost;
+        final long totalLatency;
+        final List<String> path;
 
-    private String selectedNode = null;
+        Route(long totalCost, long totalLatency, List<String> path) {
+            this.totalCost = totalCost;
+            this.totalLatency = totalLatency;
+            this.path = path;
+        }
 
-    NetworkTopologyGUI() {
-        setTitle("Network Topology Optimizer");
-        setSize(800, 600);
-        setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-        setLayout(new BorderLayout());
+        @Override
+        public String toString() {
+            return "Total Cost: " + totalCost + ", Total Latency: " + totalLatency + ", Path: " + String.join(" -> ", path);
+        }
+    }
 
-        JPanel buttonPanel = new JPanel();
-        JButton addNodeBtn = new JButton("Add Node");
-        JButton addEdgeBtn = new JButton("Add Edge");
-        JButton findMSTBtn = new JButton("Find MST");
-        JButton shortestPathBtn = new JButton("Find Shortest Path");
+    final List<Route> routes;
+    final boolean truncated;   // The label bound discarded paths, so some trade-offs may be missing
 
-        buttonPanel.add(addNodeBtn);
-        buttonPanel.add(addEdgeBtn);
-        buttonPanel.add(findMSTBtn);
-        buttonPanel.add(shortestPathBtn);
+    ParetoFrontier(List<Route> routes, boolean truncated) {
+        this.routes = routes;
+        this.truncated = truncated;
+    }
+}
 
-        add(buttonPanel, BorderLayout.NORTH);
-        add(new JScrollPane(outputArea), BorderLayout.SOUTH);
-        add(drawPanel, BorderLayout.CENTER);
+// Graph with node names interned to int ids and edges in primitive arrays
+class CompactGraph {
+    private final Map<String, Integer> ids = new HashMap<>();   // Name -> id
+    private String[] names = new String[16];   // Id -> name
+    // Columns are heap buffers, or read-only views of the mapping after openSnapshot until the first mutation
+    private IntBuffer xs = IntBuffer.allocate(16), ys = IntBuffer.allocate(16);   // Node coordinates
+    private int nodeCount;
 
-        // Button for adding nodes
-        addNodeBtn.addActionListener(e -> {
-            String name = JOptionPane.showInputDialog("Enter node name:");
-            int x = Integer.parseInt(JOptionPane.showInputDialog("Enter X position:"));
-            int y = Integer.parseInt(JOptionPane.showInputDialog("Enter Y position:"));
+    private IntBuffer edgeU = IntBuffer.allocate(16), edgeV = IntBuffer.allocate(16);   // Undirected edge list, in insertion order
+    private IntBuffer edgeCost = IntBuffer.allocate(16), edgeBandwidth = IntBuffer.allocate(16);
+    private int edgeCount;
 
-            graph.addNode(name, x, y);
-            drawPanel.repaint();
-        });
+    private CsrGraph csr;   // Adjacency view; null after a mutation
+    private ShortestPathEngine pathEngine;   // Reusable workspace for csr
+    private ParetoSearch paretoSearch;       // Reusable label pools for csr
+    private DynamicForest dynamicForest;     // Incrementally maintained MST; null unless enabled
+    private SpatialIndex nodeIndex;   // Node positions; built on first use so bulk loads skip it
 
-        // Button for adding edges
-        addEdgeBtn.addActionListener(e -> {
-            String from = JOptionPane.showInputDialog("Enter starting node:");
-            String to = JOptionPane.showInputDialog("Enter destination node:");
-            int cost = Integer.parseInt(JOptionPane.showInputDialog("Enter cost:"));
-            int bandwidth = Integer.parseInt(JOptionPane.showInputDialog("Enter bandwidth:"));
+    // Add a node, or move it if the name already exists; returns its id
+    public int addNode(String name, int x, int y) {
+        copyColumnsToHeap();
+        Integer existing = ids.get(name);
+        if (existing != null) {
+            xs.put(existing, x);
+            ys.put(existing, y);
+            if (nodeIndex != null) nodeIndex.put(existing, x, y);
+            return existing;
+        }
+        if (nodeCount == names.length) {
+            int capacity = nodeCount * 2;
+            names = Arrays.copyOf(names, capacity);
+            xs = IntBuffer.wrap(Arrays.copyOf(xs.array(), capacity));
+            ys = IntBuffer.wrap(Arrays.copyOf(ys.array(), capacity));
+        }
+        names[nodeCount] = name;
+        xs.put(nodeCount, x);
+        ys.put(nodeCount, y);
+        ids.put(name, nodeCount);
+        if (nodeIndex != null) nodeIndex.put(nodeCount, x, y);
+        csr = null;
+        if (dynamicForest != null) dynamicForest.addVertex();
+        return nodeCount++;
+    }
 
-            graph.addEdge(from, to, cost, bandwidth);
-            drawPanel.repaint();
-            outputArea.append("Added edge: " + from + " - " + to + " (Cost: " + cost + ", Bandwidth: " + bandwidth + ")\n");
-        });
+    // Add an undirected edge between two existing nodes
+    public void addEdge(String from, String to, int cost, int bandwidth) {
+        Integer u = ids.get(from), v = ids.get(to);
+        if (u == null || v == null) throw new IllegalArgumentException("Unknown node: " + (u == null ? from : to));
+        addEdge(u, v, cost, bandwidth);
+    }
 
-        // Button for finding MST
-        findMSTBtn.addActionListener(e -> {
-            NetworkResult result = graph.primMST();
-            outputArea.append("Minimum Spanning Tree (MST) - " + result.toString() + "\n");
-        });
+    // Add an undirected edge by node id
+    public void addEdge(int u, int v, int cost, int bandwidth) {
+        if (u < 0 || u >= nodeCount || v < 0 || v >= nodeCount) throw new IllegalArgumentException("Unknown node id");
+        copyColumnsToHeap();
+        if (edgeCount == edgeU.capacity()) {
+            int capacity = edgeCount * 2;
+            edgeU = IntBuffer.wrap(Arrays.copyOf(edgeU.array(), capacity));
+            edgeV = IntBuffer.wrap(Arrays.copyOf(edgeV.array(), capacity));
+            edgeCost = IntBuffer.wrap(Arrays.copyOf(edgeCost.array(), capacity));
+            edgeBandwidth = IntBuffer.wrap(Arrays.copyOf(edgeBandwidth.array(), capacity));
+        }
+        edgeU.put(edgeCount, u);
+        edgeV.put(edgeCount, v);
+        edgeCost.put(edgeCount, cost);
+        edgeBandwidth.put(edgeCount, bandwidth);
+        if (dynamicForest != null) dynamicForest.insertEdge(edgeCount, u, v, cost, bandwidth);
+        edgeCount++;
+        csr = null;
+    }
 
-        // Button for finding shortest path
-        shortestPathBtn.addActionListener(e -> {
-            String start = JOptionPane.showInputDialog("Enter start node:");
-            String end = JOptionPane.showInputDialog("Enter destination node:");
-            NetworkResult result = graph.dijkstra(start, end);
-            outputArea.append("Shortest Path from " + start + " to " + end + " - " + result.toString() + "\n");
-        });
+    // A snapshot-backed graph reads its columns from the read-only mapping; the first mutation copies
+    // them to the heap. A CsrGraph built before that keeps the mapped views, which stay valid.
+    private void copyColumnsToHeap() {
+        if (xs.hasArray()) return;
+        xs = heapCopy(xs, nodeCount, names.length);
+        ys = heapCopy(ys, nodeCount, names.length);
+        int edgeCapacity = Math.max(16, edgeCount);
+        edgeU = heapCopy(edgeU, edgeCount, edgeCapacity);
+        edgeV = heapCopy(edgeV, edgeCount, edgeCapacity);
+        edgeCost = heapCopy(edgeCost, edgeCount, edgeCapacity);
+        edgeBandwidth = heapCopy(edgeBandwidth, edgeCount, edgeCapacity);
+    }
 
-        // Mouse listener to select a node for interaction
-        drawPanel.addMouseListener(new MouseAdapter() {
-            @Override
-            public void mousePressed(MouseEvent e) {
-                for (Map.Entry<String, Point> entry : graph.getNodes().entrySet()) {
-                    if (entry.getValue().distance(e.getPoint()) < 20) {
-                        selectedNode = entry.getKey();
-                        return;
-                    }
+    private static IntBuffer heapCopy(IntBuffer column, int count, int capacity) {
+        int[] copy = new int[capacity];
+        column.duplicate().get(copy, 0, count);
+        return IntBuffer.wrap(copy);
+    }
+
+    // Start maintaining the MST on every insertion; seeds the forest with the current edges
+    public void enableDynamicMST() {
+        if (dynamicForest != null) return;
+        DynamicForest forest = new DynamicForest();
+        for (int v = 0; v < nodeCount; v++) forest.addVertex();
+        for (int e = 0; e < edgeCount; e++) forest.insertEdge(e, edgeU.get(e), edgeV.get(e), edgeCost.get(e), edgeBandwidth.get(e));
+        dynamicForest = forest;
+    }
+
+    public int id(String name) {
+        Integer id = ids.get(name);
+        return id == null ? -1 : id;
+    }
+
+    public String name(int id) {
+        return names[id];
+    }
+
+    public int x(int id) {
+        return xs.get(id);
+    }
+
+    public int y(int id) {
+        return ys.get(id);
+    }
+
+    public int nodeCount() {
+        return nodeCount;
+    }
+
+    public int edgeCount() {
+        return edgeCount;
+    }
+
+    static final int SNAPSHOT_MAGIC = 0x5347544E;   // "NTGS" in little-endian
+    static final int SNAPSHOT_VERSION = 1;
+
+    // Binary snapshot (layout in header section 18). Written through a bounded buffer rather than a
+    // mapping, so no mapping of the temp file is still live when it is moved over the destination.
+    public void writeSnapshot(Path file) throws IOException {
+        byte[][] encoded = new byte[nodeCount][];
+        int[] nameOffsets = new int[nodeCount + 1];
+        for (int v = 0; v < nodeCount; v++) {
+            encoded[v] = names[v].getBytes(StandardCharsets.UTF_8);
+            nameOffsets[v + 1] = nameOffsets[v] + encoded[v].length;
+        }
+        long bytes = 4L * (4 + 2L * nodeCount + 4L * edgeCount + nodeCount + 1) + nameOffsets[nodeCount];
+        if (bytes > Integer.MAX_VALUE) throw new IOException("Graph too large for a snapshot: " + bytes + " bytes");
+
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer chunk = ByteBuffer.allocateDirect(SNAPSHOT_CHUNK).order(ByteOrder.LITTLE_ENDIAN);
+            chunk.putInt(SNAPSHOT_MAGIC).putInt(SNAPSHOT_VERSION).putInt(nodeCount).putInt(edgeCount);
+            writeInts(channel, chunk, xs, nodeCount);
+            writeInts(channel, chunk, ys, nodeCount);
+            writeInts(channel, chunk, edgeU, edgeCount);
+            writeInts(channel, chunk, edgeV, edgeCount);
+            writeInts(channel, chunk, edgeCost, edgeCount);
+            writeInts(channel, chunk, edgeBandwidth, edgeCount);
+            writeInts(channel, chunk, IntBuffer.wrap(nameOffsets), nodeCount + 1);
+            for (byte[] name : encoded) {
+                if (chunk.remaining() < name.length) flush(channel, chunk);
+                if (name.length > chunk.capacity()) {
+                    ByteBuffer whole = ByteBuffer.wrap(name);
+                    while (whole.hasRemaining()) channel.write(whole);
+                } else {
+                    chunk.put(name);
                 }
-                selectedNode = null;
             }
-        });
-
-        setVisible(true);
+            flush(channel, chunk);
+            channel.force(false);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
     }
 
-    // Panel to draw the network topology
-    class DrawPanel extends JPanel {
-        @Override
-        protected void paintComponent(Graphics g) {
-            super.paintComponent(g);
-            Map<String, Point> nodes = graph.getNodes();
-            Set<Edge> edges = graph.getAllEdges();
-
-            // Draw edges
-            g.setColor(Color.BLACK);
-            for (Edge edge : edges) {
-                Point p1 = nodes.get(edge.from);
-                Point p2 = nodes.get(edge.to);
-                g.drawLine(p1.x, p1.y, p2.x, p2.y);
-                g.drawString("C:" + edge.cost + " B:" + edge.bandwidth, (p1.x + p2.x) / 2, (p1.y + p2.y) / 2);
+    // Maps the snapshot read-only. The node and edge columns are views of the mapping, so nothing is
+    // copied or parsed until the first mutation; only the names are decoded, to rebuild the id map.
+    // Counts, sizes, name offsets and edge endpoints are checked first, so a truncated or corrupt file
+    // fails with an IOException saying why.
+    public static CompactGraph openSnapshot(Path file) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < 16) throw new IOException("Not a topology snapshot (only " + size + " bytes): " + file);
+            if (size > Integer.MAX_VALUE) throw new IOException("Topology snapshot too large to map: " + file);
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size).order(ByteOrder.LITTLE_ENDIAN);
+        }   // The mapping stays valid after the channel closes
+        long size = buffer.capacity();
+        if (buffer.getInt(0) != SNAPSHOT_MAGIC || buffer.getInt(4) != SNAPSHOT_VERSION) {
+            throw new IOException("Not a topology snapshot: " + file);
+        }
+        int n = buffer.getInt(8), m = buffer.getInt(12);
+        if (n < 0 || m < 0) {
+            throw new IOException("Corrupt topology snapshot " + file + ": node count " + n + ", edge count " + m);
+        }
+        long fixedBytes = 4L * (4 + 2L * n + 4L * m + n + 1);
+        if (fixedBytes > size) {
+            throw new IOException("Truncated topology snapshot " + file + ": " + n + " nodes and " + m
+                    + " edges need at least " + fixedBytes + " bytes, file has " + size);
+        }
+
+        CompactGraph graph = new CompactGraph();
+        int offset = 16;
+        graph.xs = column(buffer, offset, n);
+        graph.ys = column(buffer, offset += 4 * n, n);
+        graph.edgeU = column(buffer, offset += 4 * n, m);
+        graph.edgeV = column(buffer, offset += 4 * m, m);
+        graph.edgeCost = column(buffer, offset += 4 * m, m);
+        graph.edgeBandwidth = column(buffer, offset += 4 * m, m);
+        IntBuffer nameOffsets = column(buffer, offset += 4 * m, n + 1);
+
+        for (int e = 0; e < m; e++) {
+            int u = graph.edgeU.get(e), v = graph.edgeV.get(e);
+            if (u < 0 || u >= n || v < 0 || v >= n) {
+                throw new IOException("Corrupt topology snapshot " + file + ": edge " + e + " joins " + u + " and " + v
+                        + ", but node ids run 0.." + (n - 1));
+            }
+        }
+        for (int v = 0; v < n; v++) {
+            if (nameOffsets.get(v + 1) < nameOffsets.get(v)) {
+                throw new IOException("Corrupt topology snapshot " + file + ": name offsets decrease at node " + v);
             }
+        }
+        if (nameOffsets.get(0) != 0 || fixedBytes + nameOffsets.get(n) != size) {
+            throw new IOException("Corrupt topology snapshot " + file + ": names should take "
+                    + (size - fixedBytes) + " bytes, offsets say " + (nameOffsets.get(n) - nameOffsets.get(0)));
+        }
+        byte[] nameBytes = new byte[nameOffsets.get(n)];
+        ByteBuffer nameSection = buffer.duplicate();
+        nameSection.position((int) fixedBytes);
+        nameSection.get(nameBytes);
 
-            // Draw nodes
-            g.setColor(Color.BLUE);
-            for (Map.Entry<String, Point> entry : nodes.entrySet()) {
-                g.fillOval(entry.getValue().x - 10, entry.getValue().y - 10, 20, 20);
-                g.setColor(Color.WHITE);
-                g.drawString(entry.getKey(), entry.getValue().x - 5, entry.getValue().y + 5);
-                g.setColor(Color.BLUE);
+        graph.names = new String[Math.max(16, n)];
+        for (int v = 0; v < n; v++) {
+            int start = nameOffsets.get(v);
+            graph.names[v] = new String(nameBytes, start, nameOffsets.get(v + 1) - start, StandardCharsets.UTF_8);
+            if (graph.ids.put(graph.names[v], v) != null) {
+                throw new IOException("Corrupt topology snapshot " + file + ": duplicate node name " + graph.names[v]);
             }
         }
+        graph.nodeCount = n;
+        graph.edgeCount = m;
+        return graph;
     }
 
-    // Main function to run the GUI
-    public static void main(String[] args) {
+    // Read-only int view of count values at byteOffset; slices come back big-endian, so reset the order
+    private static IntBuffer column(ByteBuffer buffer, int byteOffset, int count) {
+        ByteBuffer view = buffer.duplicate();
+        view.position(byteOffset).limit(byteOffset + 4 * count);
+        return view.slice().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+    }
+
+    private static final int SNAPSHOT_CHUNK = 1 << 20;   // Bytes buffered per snapshot write, a multiple of 4
+
+    private static void writeInts(FileChannel channel, ByteBuffer chunk, IntBuffer values, int count) throws IOException {
+        for (int done = 0; done < count; ) {
+            if (chunk.remaining() < 4) flush(channel, chunk);
+            int k = Math.min(chunk.remaining() / 4, count - done);
+            IntBuffer part = values.duplicate();
+            part.position(done).limit(done + k);
+            chunk.asIntBuffer().put(part);   // The view starts at position and keeps the byte order
+            chunk.position(chunk.position() + 4 * k);
+            done += k;
+        }
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer chunk) throws IOException {
+        chunk.flip();
+        while (chunk.hasRemaining()) channel.write(chunk);
+        chunk.clear();
+    }
+
+    // Grid over node positions, kept current by addNode once built
+    public SpatialIndex spatialIndex() {
+        if (nodeIndex == null) {
+            nodeIndex = new SpatialIndex(64);
+            for (int v = 0; v < nodeCount; v++) nodeIndex.put(v, xs.get(v), ys.get(v));
+        }
+        return nodeIndex;
+    }
+
+    // Endpoints and attributes of edge e (insertion order)
+    public int edgeFrom(int e) {
+        return edgeU.get(e);
+    }
+
+    public int edgeTo(int e) {
+        return edgeV.get(e);
+    }
+
+    public int edgeCost(int e) {
+        return edgeCost.get(e);
+    }
+
+    public int edgeBandwidth(int e) {
+        return edgeBandwidth.get(e);
+    }
+
+    // Current adjacency view (rebuilt only if the graph changed since the last call)
+    public CsrGraph csr() {
+        if (csr == null) csr = CsrGraph.build(nodeCount, edgeCount, edgeU, edgeV, edgeCost, edgeBandwidth);
+        return csr;
+    }
+
+    // Total cost and latency of the minimum spanning forest
+    public NetworkResult primMST() {
+        if (dynamicForest != null) return dynamicForest.toResult();
+        return spanningForest().toResult();
+    }
+
+    public SpanningForest spanningForest() {
+        if (dynamicForest != null) return dynamicForest.forest();
+        return csr().spanningForest();
+    }
+
+    public SpanningForest parallelSpanningForest(ForkJoinPool pool) {
+        return ParallelBoruvka.spanningForest(csr(), pool);
+    }
+
+    // Pareto-optimal (cost, latency) paths, cheapest first; empty for unknown or unreachable nodes.
+    // maxLabelsPerNode bounds the search; the result says whether the bound dropped any paths.
+    public ParetoFrontier paretoPaths(String start, String end, int maxLabelsPerNode) {
+        List<ParetoFrontier.Route> routes = new ArrayList<>();
+        int s = id(start), t = id(end);
+        if (s < 0 || t < 0) return new ParetoFrontier(routes, false);
+        CsrGraph graph = csr();
+        if (paretoSearch == null || paretoSearch.graph != graph) paretoSearch = new ParetoSearch(graph);
+        int size = paretoSearch.run(s, t, maxLabelsPerNode);
+        for (int i = 0; i < size; i++) {
+            List<String> path = new ArrayList<>();
+            for (int v : paretoSearch.path(i)) path.add(names[v]);
+            routes.add(new ParetoFrontier.Route(paretoSearch.cost(i), paretoSearch.latency(i), path));
+        }
+        return new ParetoFrontier(routes, paretoSearch.truncated());
+    }
+
+    // Many-to-many cost matrix; throws IllegalArgumentException for unknown node names
+    public DistanceMatrix distanceMatrix(List<String> sources, List<String> targets, ForkJoinPool pool, Path file) throws IOException {
+        return DistanceMatrix.compute(csr(), idsOf(sources), idsOf(targets), pool, file);
+    }
+
+    private int[] idsOf(List<String> nodeNames) {
+        int[] result = new int[nodeNames.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = id(nodeNames.get(i));
+            if (result[i] < 0) throw new IllegalArgumentException("Unknown node: " + nodeNames.get(i));
+        }
+        return result;
+    }
+
+    // "from - to" label of edge e
+    public String edgeName(int e) {
+        return names[edgeU.get(e)] + " - " + names[edgeV.get(e)];
+    }
+
+    // Cheapest start -> end path, ties broken by latency; (-1, -1) if unknown or unreachable
+    public NetworkResult dijkstra(String start, String end) {
+        int s = id(start), t = id(end);
+        if (s < 0 || t < 0) return new NetworkResult(-1, -1);
+        CsrGraph graph = csr();
+        if (pathEngine == null || pathEngine.graph != graph) pathEngine = new ShortestPathEngine(graph);
+        if (!pathEngine.run(s, t)) return new NetworkResult(-1, -1);
+        List<String> path = new ArrayList<>();
+        for (int v : pathEngine.path(t)) path.add(names[v]);
+        return new NetworkResult((int) pathEngine.cost(t), (int) pathEngine.latency(t), path);
+    }
+}
+
+// Immutable compressed-sparse-row adjacency. Each undirected edge appears once in each
+// endpoint's range; edgeIds maps a slot back to its index in the edge list.
+class CsrGraph {
+    final int nodeCount;
+    final int edgeCount;
+    final int[] offsets;      // Slots of node v are offsets[v] .. offsets[v + 1] - 1
+    final int[] targets;
+    final int[] costs;
+    final int[] bandwidths;
+    final int[] edgeIds;
+    final IntBuffer edgeU, edgeV, edgeCost, edgeBandwidth;   // Undirected edge list (shared, read-only here)
+
+    private CsrGraph(int nodeCount, int edgeCount, int[] offsets, int[] targets, int[] costs, int[] bandwidths,
+                     int[] edgeIds, IntBuffer edgeU, IntBuffer edgeV, IntBuffer edgeCost, IntBuffer edgeBandwidth) {
+        this.nodeCount = nodeCount;
+        this.edgeCount = edgeCount;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.costs = costs;
+        this.bandwidths = bandwidths;
+        this.edgeIds = edgeIds;
+        this.edgeU = edgeU;
+        this.edgeV = edgeV;
+        this.edgeCost = edgeCost;
+        this.edgeBandwidth = edgeBandwidth;
+    }
+
+    // Counting sort of the edge list by endpoint. Entries past edgeCount are never read, so
+    // the columns can be shared with a CompactGraph that keeps appending.
+    static CsrGraph build(int n, int m, IntBuffer edgeU, IntBuffer edgeV, IntBuffer edgeCost, IntBuffer edgeBandwidth) {
+        int[] offsets = new int[n + 1];
+        for (int e = 0; e < m; e++) {
+            offsets[edgeU.get(e) + 1]++;
+            offsets[edgeV.get(e) + 1]++;
+        }
+        for (int v = 0; v < n; v++) offsets[v + 1] += offsets[v];
+
+        int[] next = Arrays.copyOf(offsets, n);
+        int[] targets = new int[2 * m], costs = new int[2 * m], bandwidths = new int[2 * m], edgeIds = new int[2 * m];
+        for (int e = 0; e < m; e++) {
+            int u = edgeU.get(e), v = edgeV.get(e), cost = edgeCost.get(e), bandwidth = edgeBandwidth.get(e);
+            int slot = next[u]++;
+            targets[slot] = v;
+            costs[slot] = cost;
+            bandwidths[slot] = bandwidth;
+            edgeIds[slot] = e;
+            slot = next[v]++;
+            targets[slot] = u;
+            costs[slot] = cost;
+            bandwidths[slot] = bandwidth;
+            edgeIds[slot] = e;
+        }
+        return new CsrGraph(n, m, offsets, targets, costs, bandwidths, edgeIds, edgeU, edgeV, edgeCost, edgeBandwidth);
+    }
+
+    // Tie-break key of edge e after cost: (latency << 32 | edge id)
+    long edgeTieKey(int e) {
+        return ((long) (100 / edgeBandwidth.get(e)) << 32) | e;
+    }
+
+    // Whether edge a ranks before edge b in the (cost, latency, edge id) order
+    boolean edgeBefore(int a, int b) {
+        int costA = edgeCost.get(a), costB = edgeCost.get(b);
+        return costA < costB || (costA == costB && edgeTieKey(a) < edgeTieKey(b));
+    }
+
+    // Prim's algorithm restarted from every unvisited node. keyCost/keyTie hold the cheapest
+    // edge from each queued node into the current tree; decrease-key replaces it in place.
+    SpanningForest spanningForest() {
+        int n = nodeCount;
+        long[] keyCost = new long[n];
+        long[] keyTie = new long[n];
+        int[] via = new int[n];          // Edge that joins the node to its tree, -1 for roots
+        int[] componentOf = new int[n];  // -1 until the node is settled
+        Arrays.fill(componentOf, -1);
+        IndexedDaryHeap heap = new IndexedDaryHeap(n, 4, keyCost, keyTie);
+
+        int[] chosen = new int[Math.max(0, n - 1)];
+        int chosenCount = 0;
+        long[] componentCost = new long[n], componentLatency = new long[n];
+        int components = 0;
+
+        for (int root = 0; root < n; root++) {
+            if (componentOf[root] >= 0) continue;
+            int c = components++;
+            keyCost[root] = 0;
+            keyTie[root] = 0;
+            via[root] = -1;
+            heap.insert(root);
+
+            while (!heap.isEmpty()) {
+                int u = heap.poll();
+                componentOf[u] = c;
+                int joined = via[u];
+                if (joined >= 0) {
+                    chosen[chosenCount++] = joined;
+                    componentCost[c] += edgeCost.get(joined);
+                    componentLatency[c] += 100 / edgeBandwidth.get(joined);
+                }
+                for (int slot = offsets[u]; slot < offsets[u + 1]; slot++) {
+                    int v = targets[slot];
+                    if (componentOf[v] >= 0) continue;   // Settled (includes self-loops)
+                    int e = edgeIds[slot];
+                    long cost = costs[slot];
+                    long tie = edgeTieKey(e);
+                    boolean queued = heap.contains(v);
+                    if (queued && (cost > keyCost[v] || (cost == keyCost[v] && tie >= keyTie[v]))) continue;
+                    keyCost[v] = cost;
+                    keyTie[v] = tie;
+                    via[v] = e;
+                    if (queued) heap.decreaseKey(v);
+                    else heap.insert(v);
+                }
+            }
+        }
+        return new SpanningForest(Arrays.copyOf(chosen, chosenCount), componentOf,
+                Arrays.copyOf(componentCost, components), Arrays.copyOf(componentLatency, components));
+    }
+}
+
+// Minimum spanning forest: chosen edge ids (grouped by component) and per-component totals
+class SpanningForest {
+    final int[] edges;
+    final int[] componentOf;   // Component index of each node
+    final long[] componentCost;
+    final long[] componentLatency;
+    final long totalCost;
+    final long totalLatency;
+
+    SpanningForest(int[] edges, int[] componentOf, long[] componentCost, long[] componentLatency) {
+        this.edges = edges;
+        this.componentOf = componentOf;
+        this.componentCost = componentCost;
+        this.componentLatency = componentLatency;
+        long cost = 0, latency = 0;
+        for (int c = 0; c < componentCost.length; c++) {
+            cost += componentCost[c];
+            latency += componentLatency[c];
+        }
+        this.totalCost = cost;
+        this.totalLatency = latency;
+    }
+
+    int componentCount() {
+        return componentCost.length;
+    }
+
+    // Same edge set, same node partition and same totals (edge order may differ)
+    boolean sameForest(SpanningForest other) {
+        if (totalCost != other.totalCost || totalLatency != other.totalLatency) return false;
+        if (!Arrays.equals(componentCost, other.componentCost) || !Arrays.equals(componentOf, other.componentOf)) return false;
+        int[] mine = edges.clone(), theirs = other.edges.clone();
+        Arrays.sort(mine);
+        Arrays.sort(theirs);
+        return Arrays.equals(mine, theirs);
+    }
+
+    NetworkResult toResult() {
+        return new NetworkResult((int) totalCost, (int) totalLatency);
+    }
+}
+
+// Dijkstra over a CsrGraph ordered by (cost, latency). Not thread-safe: one engine per thread.
+class ShortestPathEngine {
+    final CsrGraph graph;
+    private final long[] cost;
+    private final long[] latency;
+    private final int[] pred;       // Previous node on the best path, -1 at the source
+    private final int[] stamp;      // Entries are valid only where stamp[v] == query
+    private final IndexedDaryHeap heap;
+    private int query;
+    private int[] wanted;           // Targets of runToAll where wanted[v] == query
+
+    ShortestPathEngine(CsrGraph graph) {
+        this.graph = graph;
+        int n = graph.nodeCount;
+        this.cost = new long[n];
+        this.latency = new long[n];
+        this.pred = new int[n];
+        this.stamp = new int[n];
+        this.heap = new IndexedDaryHeap(n, 4, cost, latency);
+    }
+
+    // Settle nodes from source until target is settled (target < 0: all reachable nodes).
+    // Returns whether the target was reached.
+    boolean run(int source, int target) {
+        return search(source, target, null);
+    }
+
+    // Settle nodes from source until every node in targetSet is settled or unreachable
+    void runToAll(int source, int[] targetSet) {
+        if (wanted == null) wanted = new int[graph.nodeCount];
+        search(source, -1, targetSet);
+    }
+
+    private boolean search(int source, int target, int[] targetSet) {
+        if (++query == 0) {   // Stamp wrapped around: invalidate everything once
+            Arrays.fill(stamp, 0);
+            if (wanted != null) Arrays.fill(wanted, 0);
+            query = 1;
+        }
+        int remaining = 0;
+        if (targetSet != null) {
+            for (int t : targetSet) {
+                if (wanted[t] != query) {
+                    wanted[t] = query;
+                    remaining++;
+                }
+            }
+            if (remaining == 0) return true;
+        }
+        heap.clear();
+        int[] offsets = graph.offsets, targets = graph.targets, costs = graph.costs, bandwidths = graph.bandwidths;
+        touch(source, 0, 0, -1);
+        heap.insert(source);
+
+        while (!heap.isEmpty()) {
+            int u = heap.poll();
+            if (u == target) return true;
+            if (remaining > 0 && wanted[u] == query && --remaining == 0) return true;
+            long uCost = cost[u], uLatency = latency[u];
+            for (int slot = offsets[u]; slot < offsets[u + 1]; slot++) {
+                int v = targets[slot];
+                long newCost = uCost + costs[slot];
+                long newLatency = uLatency + 100 / bandwidths[slot];
+                if (stamp[v] != query) {
+                    touch(v, newCost, newLatency, u);
+                    heap.insert(v);
+                } else if (newCost < cost[v] || (newCost == cost[v] && newLatency < latency[v])) {
+                    if (!heap.contains(v)) continue;   // Already settled with a better or equal key
+                    touch(v, newCost, newLatency, u);
+                    heap.decreaseKey(v);
+                }
+            }
+        }
+        return target < 0;
+    }
+
+    boolean reached(int v) {
+        return stamp[v] == query;
+    }
+
+    long cost(int v) {
+        return reached(v) ? cost[v] : -1;
+    }
+
+    long latency(int v) {
+        return reached(v) ? latency[v] : -1;
+    }
+
+    // Node ids from the source to v (empty if v was not reached)
+    int[] path(int v) {
+        if (!reached(v)) return new int[0];
+        int length = 0;
+        for (int u = v; u != -1; u = pred[u]) length++;
+        int[] path = new int[length];
+        for (int u = v, i = length - 1; u != -1; u = pred[u]) path[i--] = u;
+        return path;
+    }
+
+    private void touch(int v, long c, long l, int p) {
+        stamp[v] = query;
+        cost[v] = c;
+        latency[v] = l;
+        pred[v] = p;
+    }
+}
+
+// d-ary min-heap of node ids with decrease-key. Priorities live in the caller's arrays and
+// compare by primary, then secondary.
+class IndexedDaryHeap {
+    private final int arity;
+    private final int[] heap;
+    private final int[] position;   // Index in heap, -1 when absent
+    private final long[] primary;
+    private final long[] secondary;
+    private int size;
+
+    IndexedDaryHeap(int capacity, int arity, long[] primary, long[] secondary) {
+        this.arity = arity;
+        this.heap = new int[capacity];
+        this.position = new int[capacity];
+        this.primary = primary;
+        this.secondary = secondary;
+        Arrays.fill(position, -1);
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean contains(int v) {
+        return position[v] >= 0;
+    }
+
+    void insert(int v) {
+        heap[size] = v;
+        position[v] = size;
+        siftUp(size++);
+    }
+
+    // Call after lowering v's priority
+    void decreaseKey(int v) {
+        siftUp(position[v]);
+    }
+
+    int peek() {
+        return heap[0];
+    }
+
+    int poll() {
+        int top = heap[0];
+        position[top] = -1;
+        int last = heap[--size];
+        if (size > 0) {
+            heap[0] = last;
+            position[last] = 0;
+            siftDown(0);
+        }
+        return top;
+    }
+
+    // Remove everything; O(size)
+    void clear() {
+        for (int i = 0; i < size; i++) position[heap[i]] = -1;
+        size = 0;
+    }
+
+    private boolean less(int a, int b) {
+        return primary[a] < primary[b] || (primary[a] == primary[b] && secondary[a] < secondary[b]);
+    }
+
+    private void siftUp(int i) {
+        int v = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) / arity;
+            int p = heap[parent];
+            if (!less(v, p)) break;
+            heap[i] = p;
+            position[p] = i;
+            i = parent;
+        }
+        heap[i] = v;
+        position[v] = i;
+    }
+
+    private void siftDown(int i) {
+        int v = heap[i];
+        while (true) {
+            int first = i * arity + 1;
+            if (first >= size) break;
+            int best = first;
+            int end = Math.min(first + arity, size);
+            for (int c = first + 1; c < end; c++) {
+                if (less(heap[c], heap[best])) best = c;
+            }
+            if (!less(heap[best], v)) break;
+            heap[i] = heap[best];
+            position[heap[i]] = i;
+            i = best;
+        }
+        heap[i] = v;
+        position[v] = i;
+    }
+}
+
+// Boruvka's algorithm with fork-join rounds over a CsrGraph's edge list
+class ParallelBoruvka {
+    private static final int CHUNK = 1 << 14;   // Edges or nodes per leaf task
+
+    static SpanningForest spanningForest(CsrGraph graph, ForkJoinPool pool) {
+        int n = graph.nodeCount;
+        ConcurrentUnionFind components = new ConcurrentUnionFind(n);
+        boolean[] chosen = new boolean[graph.edgeCount];
+        int[] live = new int[graph.edgeCount];
+        for (int e = 0; e < live.length; e++) live[e] = e;
+
+        while (live.length > 0) {
+            AtomicIntegerArray cheapest = new AtomicIntegerArray(n);   // Edge id + 1 per root, 0 = none
+            pool.invoke(new CheapestEdgeTask(graph, components, live, cheapest, 0, live.length));
+            pool.invoke(new MergeTask(graph, components, cheapest, chosen, 0, n));
+            int[] current = live;
+            live = pool.submit(() -> Arrays.stream(current).parallel()
+                    .filter(e -> components.find(graph.edgeU.get(e)) != components.find(graph.edgeV.get(e)))
+                    .toArray()).join();
+        }
+        return assemble(graph, components, chosen);
+    }
+
+    // Number components by their smallest node, as Prim does, and total them per component
+    private static SpanningForest assemble(CsrGraph graph, ConcurrentUnionFind components, boolean[] chosen) {
+        int n = graph.nodeCount;
+        int[] componentOf = new int[n];
+        int[] indexOfRoot = new int[n];
+        Arrays.fill(indexOfRoot, -1);
+        int count = 0;
+        for (int v = 0; v < n; v++) {
+            int root = components.find(v);
+            if (indexOfRoot[root] < 0) indexOfRoot[root] = count++;
+            componentOf[v] = indexOfRoot[root];
+        }
+
+        long[] componentCost = new long[count], componentLatency = new long[count];
+        int[] edges = new int[Math.max(0, n - count)];
+        int size = 0;
+        for (int e = 0; e < chosen.length; e++) {
+            if (!chosen[e]) continue;
+            int c = componentOf[graph.edgeU.get(e)];
+            componentCost[c] += graph.edgeCost.get(e);
+            componentLatency[c] += 100 / graph.edgeBandwidth.get(e);
+            edges[size++] = e;
+        }
+        return new SpanningForest(Arrays.copyOf(edges, size), componentOf, componentCost, componentLatency);
+    }
+
+    // Record the cheapest edge leaving each component
+    private static class CheapestEdgeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final CsrGraph graph;
+        private final ConcurrentUnionFind components;
+        private final int[] live;
+        private final AtomicIntegerArray cheapest;
+        private final int from, to;
+
+        CheapestEdgeTask(CsrGraph graph, ConcurrentUnionFind components, int[] live, AtomicIntegerArray cheapest, int from, int to) {
+            this.graph = graph;
+            this.components = components;
+            this.live = live;
+            this.cheapest = cheapest;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > CHUNK) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new CheapestEdgeTask(graph, components, live, cheapest, from, mid),
+                        new CheapestEdgeTask(graph, components, live, cheapest, mid, to));
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                int e = live[i];
+                int ru = components.find(graph.edgeU.get(e)), rv = components.find(graph.edgeV.get(e));
+                if (ru == rv) continue;
+                offer(ru, e);
+                offer(rv, e);
+            }
+        }
+
+        private void offer(int root, int e) {
+            while (true) {
+                int current = cheapest.get(root);
+                if (current != 0 && !graph.edgeBefore(e, current - 1)) return;
+                if (cheapest.compareAndSet(root, current, e + 1)) return;
+            }
+        }
+    }
+
+    // Union along every recorded cheapest edge; the union that succeeds marks the edge chosen
+    private static class MergeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final CsrGraph graph;
+        private final ConcurrentUnionFind components;
+        private final AtomicIntegerArray cheapest;
+        private final boolean[] chosen;
+        private final int from, to;
+
+        MergeTask(CsrGraph graph, ConcurrentUnionFind components, AtomicIntegerArray cheapest, boolean[] chosen, int from, int to) {
+            this.graph = graph;
+            this.components = components;
+            this.cheapest = cheapest;
+            this.chosen = chosen;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > CHUNK) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new MergeTask(graph, components, cheapest, chosen, from, mid),
+                        new MergeTask(graph, components, cheapest, chosen, mid, to));
+                return;
+            }
+            for (int root = from; root < to; root++) {
+                int e = cheapest.get(root) - 1;
+                if (e >= 0 && components.union(graph.edgeU.get(e), graph.edgeV.get(e))) chosen[e] = true;
+            }
+        }
+    }
+}
+
+// Minimum spanning forest maintained under edge insertions with a link-cut tree. Every vertex and
+// every tree edge is a link-cut node; an edge node sits between its two endpoints, so the
+// highest-ranked node on a path is the edge to drop when a cheaper edge closes a cycle.
+class DynamicForest {
+    // Link-cut nodes (splay trees over preferred paths)
+    private int[] left = new int[16], right = new int[16], parent = new int[16];
+    private boolean[] flip = new boolean[16];   // Pending reversal of the subtree
+    private int[] best = new int[16];           // Node with the highest-ranked edge in the splay subtree, -1 if none
+    private int[] edgeOf = new int[16];         // Edge id of an edge node, -1 for vertex nodes
+    private int nodeCount;
+    private int[] freeNodes = new int[16];      // Released edge nodes
+    private int freeCount;
+    private int[] stack = new int[16];          // Scratch for splay
+
+    // Edges seen so far, indexed by edge id
+    private int[] edgeU = new int[16], edgeV = new int[16], edgeNode = new int[16];   // edgeNode -1 if not in the forest
+    private long[] edgeCost = new long[16], edgeTie = new long[16];
+    private int edgeCount;
+
+    private int vertexCount;   // Vertex v is link-cut node vertexNode[v]
+    private int[] vertexNode = new int[16];
+    private long totalCost, totalLatency;
+    private int treeEdges;
+
+    void addVertex() {
+        if (vertexCount == vertexNode.length) vertexNode = Arrays.copyOf(vertexNode, vertexCount * 2);
+        vertexNode[vertexCount++] = newNode(-1);
+    }
+
+    // Offer edge e (ids must arrive in increasing order); updates the forest if e belongs in it
+    void insertEdge(int e, int u, int v, int cost, int bandwidth) {
+        if (e == edgeU.length) {
+            int capacity = e * 2;
+            edgeU = Arrays.copyOf(edgeU, capacity);
+            edgeV = Arrays.copyOf(edgeV, capacity);
+            edgeNode = Arrays.copyOf(edgeNode, capacity);
+            edgeCost = Arrays.copyOf(edgeCost, capacity);
+            edgeTie = Arrays.copyOf(edgeTie, capacity);
+        }
+        edgeU[e] = u;
+        edgeV[e] = v;
+        edgeNode[e] = -1;
+        edgeCost[e] = cost;
+        edgeTie[e] = ((long) (100 / bandwidth) << 32) | e;   // Same order as CsrGraph.edgeTieKey
+        edgeCount = e + 1;
+        if (u == v) return;
+
+        int a = vertexNode[u], b = vertexNode[v];
+        if (findRoot(a) != findRoot(b)) {
+            attach(e);
+            return;
+        }
+        makeRoot(a);
+        access(b);
+        int heaviest = best[b];
+        if (heaviest != -1 && ranksAfter(edgeOf[heaviest], e)) {
+            detach(edgeOf[heaviest]);
+            attach(e);
+        }
+    }
+
+    NetworkResult toResult() {
+        return new NetworkResult((int) totalCost, (int) totalLatency);
+    }
+
+    int componentCount() {
+        return vertexCount - treeEdges;
+    }
+
+    // Snapshot in SpanningForest form, components numbered by their smallest vertex
+    SpanningForest forest() {
+        int[] componentOf = new int[vertexCount];
+        Map<Integer, Integer> indexOfRoot = new HashMap<>();
+        for (int v = 0; v < vertexCount; v++) {
+            int root = findRoot(vertexNode[v]);
+            Integer index = indexOfRoot.get(root);
+            if (index == null) {
+                index = indexOfRoot.size();
+                indexOfRoot.put(root, index);
+            }
+            componentOf[v] = index;
+        }
+        long[] componentCost = new long[indexOfRoot.size()], componentLatency = new long[indexOfRoot.size()];
+        int[] edges = new int[treeEdges];
+        int size = 0;
+        for (int e = 0; e < edgeCount; e++) {
+            if (edgeNode[e] < 0) continue;
+            int c = componentOf[edgeU[e]];
+            componentCost[c] += edgeCost[e];
+            componentLatency[c] += edgeTie[e] >>> 32;
+            edges[size++] = e;
+        }
+        return new SpanningForest(edges, componentOf, componentCost, componentLatency);
+    }
+
+    private boolean ranksAfter(int e, int f) {
+        return edgeCost[e] > edgeCost[f] || (edgeCost[e] == edgeCost[f] && edgeTie[e] > edgeTie[f]);
+    }
+
+    private void attach(int e) {
+        int node = newNode(e);
+        link(node, vertexNode[edgeU[e]]);
+        link(vertexNode[edgeV[e]], node);
+        edgeNode[e] = node;
+        totalCost += edgeCost[e];
+        totalLatency += edgeTie[e] >>> 32;
+        treeEdges++;
+    }
+
+    private void detach(int e) {
+        int node = edgeNode[e];
+        cut(node, vertexNode[edgeU[e]]);
+        cut(node, vertexNode[edgeV[e]]);
+        if (freeCount == freeNodes.length) freeNodes = Arrays.copyOf(freeNodes, freeCount * 2);
+        freeNodes[freeCount++] = node;
+        edgeNode[e] = -1;
+        totalCost -= edgeCost[e];
+        totalLatency -= edgeTie[e] >>> 32;
+        treeEdges--;
+    }
+
+    private int newNode(int edge) {
+        int x;
+        if (freeCount > 0) {
+            x = freeNodes[--freeCount];
+        } else {
+            if (nodeCount == left.length) {
+                int capacity = nodeCount * 2;
+                left = Arrays.copyOf(left, capacity);
+                right = Arrays.copyOf(right, capacity);
+                parent = Arrays.copyOf(parent, capacity);
+                flip = Arrays.copyOf(flip, capacity);
+                best = Arrays.copyOf(best, capacity);
+                edgeOf = Arrays.copyOf(edgeOf, capacity);
+                stack = new int[capacity];
+            }
+            x = nodeCount++;
+        }
+        left[x] = right[x] = parent[x] = -1;
+        flip[x] = false;
+        edgeOf[x] = edge;
+        best[x] = edge >= 0 ? x : -1;
+        return x;
+    }
+
+    // --- Link-cut tree primitives ---
+
+    private boolean isSplayRoot(int x) {
+        int p = parent[x];
+        return p == -1 || (left[p] != x && right[p] != x);
+    }
+
+    private void push(int x) {
+        if (!flip[x]) return;
+        int l = left[x];
+        left[x] = right[x];
+        right[x] = l;
+        if (left[x] != -1) flip[left[x]] ^= true;
+        if (right[x] != -1) flip[right[x]] ^= true;
+        flip[x] = false;
+    }
+
+    private void pull(int x) {
+        int top = edgeOf[x] >= 0 ? x : -1;
+        int l = left[x], r = right[x];
+        if (l != -1 && best[l] != -1 && (top == -1 || ranksAfter(edgeOf[best[l]], edgeOf[top]))) top = best[l];
+        if (r != -1 && best[r] != -1 && (top == -1 || ranksAfter(edgeOf[best[r]], edgeOf[top]))) top = best[r];
+        best[x] = top;
+    }
+
+    private void rotate(int x) {
+        int p = parent[x], g = parent[p];
+        if (!isSplayRoot(p)) {
+            if (left[g] == p) left[g] = x;
+            else right[g] = x;
+        }
+        parent[x] = g;
+        if (left[p] == x) {
+            left[p] = right[x];
+            if (right[x] != -1) parent[right[x]] = p;
+            right[x] = p;
+        } else {
+            right[p] = left[x];
+            if (left[x] != -1) parent[left[x]] = p;
+            left[x] = p;
+        }
+        parent[p] = x;
+        pull(p);
+        pull(x);
+    }
+
+    private void splay(int x) {
+        int top = 0;
+        stack[top++] = x;
+        for (int y = x; !isSplayRoot(y); y = parent[y]) stack[top++] = parent[y];
+        while (top > 0) push(stack[--top]);   // Resolve reversals from the splay root down
+        while (!isSplayRoot(x)) {
+            int p = parent[x];
+            if (!isSplayRoot(p)) {
+                int g = parent[p];
+                rotate((left[g] == p) == (left[p] == x) ? p : x);   // Zig-zig rotates the parent first
+            }
+            rotate(x);
+        }
+    }
+
+    // Make the root-to-x path preferred; x ends up at the root of its splay tree
+    private void access(int x) {
+        for (int y = x, last = -1; y != -1; last = y, y = parent[y]) {
+            splay(y);
+            right[y] = last;
+            pull(y);
+        }
+        splay(x);
+    }
+
+    private void makeRoot(int x) {
+        access(x);
+        flip[x] ^= true;
+    }
+
+    private int findRoot(int x) {
+        access(x);
+        int r = x;
+        push(r);
+        while (left[r] != -1) {
+            r = left[r];
+            push(r);
+        }
+        splay(r);
+        return r;
+    }
+
+    // x must be the root of its own tree after makeRoot
+    private void link(int x, int y) {
+        makeRoot(x);
+        parent[x] = y;
+    }
+
+    // Remove the tree edge between adjacent nodes x and y
+    private void cut(int x, int y) {
+        makeRoot(x);
+        access(y);
+        int l = left[y];   // The path is x - y, so x is y's whole left subtree
+        if (l != -1) parent[l] = -1;
+        left[y] = -1;
+        pull(y);
+    }
+}
+
+// Runs streamed MST / shortest-path queries in parallel on a frozen snapshot of a CompactGraph
+class TopologyBatch {
+    private final CompactGraph graph;   // Only read (names, ids) while the batch runs
+    private final CsrGraph snapshot;
+    private final int threads;
+    private final Map<Thread, ShortestPathEngine> engines = new ConcurrentHashMap<>();   // One per worker
+    private final Map<String, long[]> latencies = new TreeMap<>();   // Kind -> [count, nanos...], guarded by itself
+    private String mstAnswer;   // The snapshot never changes, so its MST is computed once; guarded by this
+
+    TopologyBatch(CompactGraph graph, int threads) {
+        this.graph = graph;
+        this.snapshot = graph.csr();
+        this.threads = threads;
+    }
+
+    // Read queries until EOF and write one result line per query:
+    // <line>\t<query>\t<result>\t<micros>us. Returns the number of queries. The first failed write
+    // stops reading and is rethrown once the queries in flight have finished.
+    int run(BufferedReader queries, Writer out) throws IOException, InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "topology-batch");
+            thread.setDaemon(true);
+            return thread;
+        });
+        int maxInFlight = 4 * threads;
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        AtomicReference<IOException> writeFailure = new AtomicReference<>();
+        int count = 0, lineNumber = 0;
+        try {
+            String line;
+            while (writeFailure.get() == null && (line = queries.readLine()) != null) {
+                lineNumber++;
+                String query = line.trim();
+                if (query.isEmpty() || query.startsWith("#")) continue;
+                inFlight.acquire();
+                int number = lineNumber;
+                pool.execute(() -> {
+                    try {
+                        answer(number, query, out);
+                    } catch (IOException e) {
+                        writeFailure.compareAndSet(null, e);
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+                count++;
+            }
+            inFlight.acquire(maxInFlight);   // Wait for the tail
+        } finally {
+            pool.shutdownNow();
+        }
+        if (writeFailure.get() != null) throw writeFailure.get();
+        synchronized (out) {
+            out.write(summary());
+            out.flush();
+        }
+        return count;
+    }
+
+    // "# <kind> n=.. p50=..us p90=..us p99=..us max=..us" for each query kind
+    String summary() {
+        StringBuilder sb = new StringBuilder();
+        synchronized (latencies) {
+            for (Map.Entry<String, long[]> entry : latencies.entrySet()) {
+                long[] samples = entry.getValue();
+                int n = (int) samples[0];
+                long[] sorted = Arrays.copyOfRange(samples, 1, n + 1);
+                Arrays.sort(sorted);
+                sb.append(String.format("# %s n=%d p50=%dus p90=%dus p99=%dus max=%dus%n", entry.getKey(), n,
+                        percentileMicros(sorted, 0.50), percentileMicros(sorted, 0.90), percentileMicros(sorted, 0.99),
+                        sorted[n - 1] / 1000));
+            }
+        }
+        return sb.toString();
+    }
+
+    private void answer(int number, String query, Writer out) throws IOException {
+        long start = System.nanoTime();
+        String[] parts = query.split("\\s+");
+        String kind = parts[0].toLowerCase();
+        String result;
+        try {
+            result = evaluate(kind, parts);
+        } catch (RuntimeException e) {
+            kind = "error";
+            result = "error: " + e.getMessage();
+        }
+        long nanos = System.nanoTime() - start;
+        record(kind, nanos);
+        String line = number + "\t" + query + "\t" + result + "\t" + nanos / 1000 + "us\n";
+        synchronized (out) {
+            out.write(line);
+        }
+    }
+
+    private String evaluate(String kind, String[] parts) {
+        switch (kind) {
+            case "mst":
+                return mst();
+            case "path": {
+                if (parts.length != 3) throw new IllegalArgumentException("expected: path <from> <to>");
+                int s = graph.id(parts[1]), t = graph.id(parts[2]);
+                if (s < 0 || t < 0) throw new IllegalArgumentException("unknown node: " + (s < 0 ? parts[1] : parts[2]));
+                ShortestPathEngine engine = engines.computeIfAbsent(Thread.currentThread(), th -> new ShortestPathEngine(snapshot));
+                if (!engine.run(s, t)) return new NetworkResult(-1, -1).toString();
+                List<String> path = new ArrayList<>();
+                for (int v : engine.path(t)) path.add(graph.name(v));
+                return new NetworkResult((int) engine.cost(t), (int) engine.latency(t), path).toString();
+            }
+            default:
+                throw new IllegalArgumentException("unknown query: " + kind);
+        }
+    }
+
+    private synchronized String mst() {
+        if (mstAnswer == null) {
+            SpanningForest forest = snapshot.spanningForest();
+            mstAnswer = forest.toResult() + ", Components: " + forest.componentCount();
+        }
+        return mstAnswer;
+    }
+
+    private void record(String kind, long nanos) {
+        synchronized (latencies) {
+            long[] samples = latencies.computeIfAbsent(kind, k -> new long[17]);
+            int n = (int) samples[0];
+            if (n + 1 == samples.length) {
+                samples = Arrays.copyOf(samples, samples.length * 2);
+                latencies.put(kind, samples);
+            }
+            samples[n + 1] = nanos;
+            samples[0] = n + 1;
+        }
+    }
+
+    private static long percentileMicros(long[] sorted, double quantile) {
+        int rank = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(0, rank)] / 1000;
+    }
+
+    // CLI entry: batch <topology.csv|.ntgs> <queries|-> [threads]
+    static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 3) {
+            System.err.println("usage: batch <topology.csv|.ntgs> <queries|-> [threads]");
+            return;
+        }
+        Path topology = Paths.get(args[1]);
+        long start = System.nanoTime();
+        CompactGraph graph;
+        if (topology.toString().endsWith(".ntgs")) {
+            graph = CompactGraph.openSnapshot(topology);
+        } else {
+            graph = new CompactGraph();
+            TopologyFiles.importEdgeList(graph, topology);
+        }
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        TopologyBatch batch = new TopologyBatch(graph, threads);
+        System.err.printf("# loaded %d nodes, %d edges in %.0fms%n", graph.nodeCount(), graph.edgeCount(),
+                (System.nanoTime() - start) / 1e6);
+
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+        try (BufferedReader queries = args[2].equals("-")
+                ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                : Files.newBufferedReader(Paths.get(args[2]), StandardCharsets.UTF_8)) {
+            start = System.nanoTime();
+            int count = batch.run(queries, out);
+            System.err.printf("# %d queries on %d threads in %.0fms%n", count, threads, (System.nanoTime() - start) / 1e6);
+        }
+    }
+}
+
+// Streaming text import/export for CompactGraph (format in header section 18)
+class TopologyFiles {
+    private static final int MAX_FIELDS = 6;
+
+    // Returns the number of node and edge records loaded
+    static int importEdgeList(CompactGraph graph, Path file) throws IOException {
+        NameTable names = new NameTable(graph);
+        int records = 0, lineNumber = 0;
+        byte[] chunk = new byte[1 << 16];
+        byte[] line = new byte[256];
+        int length = 0;
+        int[] starts = new int[MAX_FIELDS], ends = new int[MAX_FIELDS];
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(chunk)) > 0) {
+                for (int i = 0; i < read; i++) {
+                    byte b = chunk[i];
+                    if (b != '\n') {
+                        if (length == line.length) line = Arrays.copyOf(line, length * 2);
+                        line[length++] = b;
+                        continue;
+                    }
+                    records += parseLine(graph, names, line, length, starts, ends, file, ++lineNumber);
+                    length = 0;
+                }
+            }
+            if (length > 0) records += parseLine(graph, names, line, length, starts, ends, file, ++lineNumber);
+        }
+        return records;
+    }
+
+    // Node lines first so positions survive a round trip
+    static void exportEdgeList(CompactGraph graph, Path file) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write("# node,name,x,y / edge,from,to,cost,bandwidth\n");
+            for (int v = 0; v < graph.nodeCount(); v++) {
+                String name = graph.name(v);
+                for (int i = 0; i < name.length(); i++) {
+                    char c = name.charAt(i);
+                    if (c == ',' || Character.isWhitespace(c)) throw new IOException("Node name cannot be exported: \"" + name + "\"");
+                }
+                out.write("node," + name + "," + graph.x(v) + "," + graph.y(v) + "\n");
+            }
+            for (int e = 0; e < graph.edgeCount(); e++) {
+                out.write("edge," + graph.name(graph.edgeFrom(e)) + "," + graph.name(graph.edgeTo(e)) + ","
+                        + graph.edgeCost(e) + "," + graph.edgeBandwidth(e) + "\n");
+            }
+        }
+    }
+
+    private static int parseLine(CompactGraph graph, NameTable names, byte[] line, int length, int[] starts, int[] ends,
+                                 Path file, int lineNumber) throws IOException {
+        int fields = 0;
+        int i = 0;
+        while (i < length) {
+            byte b = line[i];
+            if (b == ',' || b == ' ' || b == '\t' || b == '\r') {
+                i++;
+                continue;
+            }
+            if (b == '#') break;   // Comment to end of line
+            if (fields == MAX_FIELDS) throw new IOException(file + ":" + lineNumber + ": too many fields");
+            starts[fields] = i;
+            while (i < length && line[i] != ',' && line[i] != ' ' && line[i] != '\t' && line[i] != '\r') i++;
+            ends[fields++] = i;
+        }
+        if (fields == 0) return 0;
+
+        if (is(line, starts[0], ends[0], "node")) {
+            if (fields != 4) throw new IOException(file + ":" + lineNumber + ": expected node,<name>,<x>,<y>");
+            int x = number(line, starts[2], ends[2], file, lineNumber), y = number(line, starts[3], ends[3], file, lineNumber);
+            int id = names.find(line, starts[1], ends[1]);
+            if (id >= 0) graph.addNode(graph.name(id), x, y);   // Moves it
+            else names.add(line, starts[1], ends[1], graph.addNode(text(line, starts[1], ends[1]), x, y));
+            return 1;
+        }
+        int first = is(line, starts[0], ends[0], "edge") ? 1 : 0;
+        if (fields - first != 4) throw new IOException(file + ":" + lineNumber + ": expected [edge,]<from>,<to>,<cost>,<bandwidth>");
+        int u = nodeId(graph, names, line, starts[first], ends[first]);
+        int v = nodeId(graph, names, line, starts[first + 1], ends[first + 1]);
+        int bandwidth = number(line, starts[first + 3], ends[first + 3], file, lineNumber);
+        if (bandwidth <= 0) throw new IOException(file + ":" + lineNumber + ": bandwidth must be positive");
+        graph.addEdge(u, v, number(line, starts[first + 2], ends[first + 2], file, lineNumber), bandwidth);
+        return 1;
+    }
+
+    // Id of the node named by line[start, end), created at (0, 0) if unknown
+    private static int nodeId(CompactGraph graph, NameTable names, byte[] line, int start, int end) {
+        int id = names.find(line, start, end);
+        if (id < 0) id = names.add(line, start, end, graph.addNode(text(line, start, end), 0, 0));
+        return id;
+    }
+
+    // Open-addressing map from UTF-8 name bytes to node id, so repeated names are resolved
+    // without allocating a String. Falls back to the graph for nodes that existed before the import.
+    private static final class NameTable {
+        private final CompactGraph graph;
+        private int[] slots = new int[1 << 12];   // Entry index + 1, 0 = empty
+        private int[] hashes = new int[1 << 10], offsets = new int[1 << 10], lengths = new int[1 << 10], ids = new int[1 << 10];
+        private byte[] arena = new byte[1 << 14];
+        private int count, arenaSize;
+
+        NameTable(CompactGraph graph) {
+            this.graph = graph;
+        }
+
+        int find(byte[] line, int start, int end) {
+            int hash = hash(line, start, end);
+            for (int slot = hash & (slots.length - 1); slots[slot] != 0; slot = (slot + 1) & (slots.length - 1)) {
+                int entry = slots[slot] - 1;
+                if (hashes[entry] == hash && Arrays.equals(arena, offsets[entry], offsets[entry] + lengths[entry], line, start, end)) {
+                    return ids[entry];
+                }
+            }
+            if (graph.nodeCount() == count) return -1;   // Every node is in the table already
+            int id = graph.id(text(line, start, end));
+            if (id >= 0) add(line, start, end, id);
+            return id;
+        }
+
+        int add(byte[] line, int start, int end, int id) {
+            int length = end - start;
+            if (count == ids.length) {
+                int capacity = count * 2;
+                hashes = Arrays.copyOf(hashes, capacity);
+                offsets = Arrays.copyOf(offsets, capacity);
+                lengths = Arrays.copyOf(lengths, capacity);
+                ids = Arrays.copyOf(ids, capacity);
+            }
+            if (arenaSize + length > arena.length) arena = Arrays.copyOf(arena, Math.max(arena.length * 2, arenaSize + length));
+            System.arraycopy(line, start, arena, arenaSize, length);
+            hashes[count] = hash(line, start, end);
+            offsets[count] = arenaSize;
+            lengths[count] = length;
+            ids[count] = id;
+            arenaSize += length;
+            count++;
+            if (2 * count > slots.length) rehash();
+            else insert(count - 1);
+            return id;
+        }
+
+        private void rehash() {
+            slots = new int[slots.length * 2];
+            for (int entry = 0; entry < count; entry++) insert(entry);
+        }
+
+        private void insert(int entry) {
+            int slot = hashes[entry] & (slots.length - 1);
+            while (slots[slot] != 0) slot = (slot + 1) & (slots.length - 1);
+            slots[slot] = entry + 1;
+        }
+
+        private static int hash(byte[] line, int start, int end) {
+            int h = 0x811C9DC5;   // FNV-1a
+            for (int i = start; i < end; i++) h = (h ^ line[i]) * 0x01000193;
+            return h ^ (h >>> 16);
+        }
+    }
+
+    private static boolean is(byte[] line, int start, int end, String keyword) {
+        if (end - start != keyword.length()) return false;
+        for (int i = 0; i < keyword.length(); i++) {
+            if (line[start + i] != keyword.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private static String text(byte[] line, int start, int end) {
+        return new String(line, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    private static int number(byte[] line, int start, int end, Path file, int lineNumber) throws IOException {
+        boolean negative = line[start] == '-';
+        int i = negative ? start + 1 : start;
+        if (i == end) throw new IOException(file + ":" + lineNumber + ": expected a number");
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = line[i] - '0';
+            if (digit < 0 || digit > 9 || value > Integer.MAX_VALUE) {
+                throw new IOException(file + ":" + lineNumber + ": not a number: " + text(line, start, end));
+            }
+            value = value * 10 + digit;
+        }
+        if (value > Integer.MAX_VALUE) throw new IOException(file + ":" + lineNumber + ": number out of range");
+        return (int) (negative ? -value : value);
+    }
+}
+
+// Hash grid of points (dense int ids) for nearest, k-nearest, radius and rectangle queries
+class SpatialIndex {
+    private final int cellSize;
+    private final Map<Long, int[]> cells = new HashMap<>();   // Cell key -> [size, ids...]
+    private int[] xs = new int[16], ys = new int[16];
+    private boolean[] present = new boolean[16];
+    private int size;   // Ids present
+    private int minCx = Integer.MAX_VALUE, minCy = Integer.MAX_VALUE;   // Occupied cell range (only grows)
+    private int maxCx = Integer.MIN_VALUE, maxCy = Integer.MIN_VALUE;
+
+    SpatialIndex(int cellSize) {
+        this.cellSize = cellSize;
+    }
+
+    // Insert id at (x, y), or move it there
+    void put(int id, int x, int y) {
+        if (id >= xs.length) {
+            int capacity = Math.max(id + 1, xs.length * 2);
+            xs = Arrays.copyOf(xs, capacity);
+            ys = Arrays.copyOf(ys, capacity);
+            present = Arrays.copyOf(present, capacity);
+        }
+        if (present[id]) remove(id);
+        xs[id] = x;
+        ys[id] = y;
+        present[id] = true;
+        size++;
+        int cx = Math.floorDiv(x, cellSize), cy = Math.floorDiv(y, cellSize);
+        minCx = Math.min(minCx, cx);
+        minCy = Math.min(minCy, cy);
+        maxCx = Math.max(maxCx, cx);
+        maxCy = Math.max(maxCy, cy);
+        long key = key(cx, cy);
+        int[] cell = cells.get(key);
+        if (cell == null) {
+            cell = new int[5];
+            cells.put(key, cell);
+        } else if (cell[0] + 1 == cell.length) {
+            cell = Arrays.copyOf(cell, cell.length * 2);
+            cells.put(key, cell);
+        }
+        cell[++cell[0]] = id;
+    }
+
+    void clear() {
+        cells.clear();
+        Arrays.fill(present, false);
+        size = 0;
+        minCx = minCy = Integer.MAX_VALUE;
+        maxCx = maxCy = Integer.MIN_VALUE;
+    }
+
+    // Closest id strictly within maxDistance of (x, y), skipping exclude; -1 if none
+    int nearest(int x, int y, double maxDistance, int exclude) {
+        int[] found = kNearest(x, y, 1, exclude, maxDistance);
+        return found.length == 0 ? -1 : found[0];
+    }
+
+    // Up to k closest ids to (x, y), nearest first, skipping exclude
+    int[] kNearest(int x, int y, int k, int exclude) {
+        return kNearest(x, y, k, exclude, Double.POSITIVE_INFINITY);
+    }
+
+    // Rings of cells outward from the query cell, clipped to the occupied cell range. Stops when the
+    // next ring is farther than the k-th best or every point has been examined. Once the rings have cost
+    // more lookups than there are occupied cells (sparse maps, outliers), the rest is one pass over them.
+    private int[] kNearest(int x, int y, int k, int exclude, double maxDistance) {
+        if (k <= 0 || cells.isEmpty()) return new int[0];
+        int[] ids = new int[k];
+        double[] dist = new double[k];   // Squared distances, ascending
+        int count = 0;
+        double limit = maxDistance * maxDistance;
+        int cx = Math.floorDiv(x, cellSize), cy = Math.floorDiv(y, cellSize);
+        int rings = Math.max(Math.max(cx - minCx, maxCx - cx), Math.max(cy - minCy, maxCy - cy));
+        int unseen = size;
+        long lookups = 0;
+
+        for (int r = 0; r <= rings && unseen > 0; r++) {
+            double gap = (double) (r - 1) * cellSize;   // Every point in ring r is at least this far away
+            double worst = count == k ? dist[k - 1] : limit;
+            if (r > 0 && gap * gap >= worst) break;
+            if (lookups > cells.size()) {
+                for (Map.Entry<Long, int[]> entry : cells.entrySet()) {
+                    long key = entry.getKey();
+                    long ring = Math.max(Math.abs((key >> 32) - cx), Math.abs((long) (int) key - cy));
+                    if (ring >= r) count = collect(entry.getValue(), x, y, exclude, limit, ids, dist, count);
+                }
+                break;
+            }
+            // Ring perimeter: rows cy - r and cy + r, then columns cx - r and cx + r between them
+            int x0 = Math.max(cx - r, minCx), x1 = Math.min(cx + r, maxCx);
+            int y0 = Math.max(cy - r + 1, minCy), y1 = Math.min(cy + r - 1, maxCy);
+            for (int side = 0; side < (r == 0 ? 1 : 4); side++) {
+                int row = side == 0 ? cy - r : cy + r, column = side == 2 ? cx - r : cx + r;
+                boolean horizontal = side < 2;
+                if (horizontal ? row < minCy || row > maxCy : column < minCx || column > maxCx) continue;
+                for (int i = horizontal ? x0 : y0, end = horizontal ? x1 : y1; i <= end; i++) {
+                    lookups++;
+                    int[] cell = cells.get(horizontal ? key(i, row) : key(column, i));
+                    if (cell == null) continue;
+                    count = collect(cell, x, y, exclude, limit, ids, dist, count);
+                    unseen -= cell[0];
+                }
+            }
+        }
+        return Arrays.copyOf(ids, count);
+    }
+
+    // Insert the cell's ids closer than limit into the sorted (ids, dist) arrays; returns the new count
+    private int collect(int[] cell, int x, int y, int exclude, double limit, int[] ids, double[] dist, int count) {
+        int k = ids.length;
+        for (int i = 1; i <= cell[0]; i++) {
+            int id = cell[i];
+            if (id == exclude) continue;
+            double d = (double) (xs[id] - x) * (xs[id] - x) + (double) (ys[id] - y) * (ys[id] - y);
+            if (d >= limit || (count == k && d >= dist[k - 1])) continue;
+            int j = count < k ? count++ : k - 1;   // Insertion into the sorted arrays
+            while (j > 0 && dist[j - 1] > d) {
+                dist[j] = dist[j - 1];
+                ids[j] = ids[j - 1];
+                j--;
+            }
+            dist[j] = d;
+            ids[j] = id;
+        }
+        return count;
+    }
+
+    void withinRadius(int x, int y, double radius, IntConsumer visitor) {
+        int r = (int) Math.ceil(radius);
+        double limit = radius * radius;
+        inRect(x - r, y - r, x + r, y + r, id -> {
+            double d = (double) (xs[id] - x) * (xs[id] - x) + (double) (ys[id] - y) * (ys[id] - y);
+            if (d <= limit) visitor.accept(id);
+        });
+    }
+
+    // Ids with minX <= x <= maxX and minY <= y <= maxY
+    void inRect(int minX, int minY, int maxX, int maxY, IntConsumer visitor) {
+        int cx0 = Math.max(minCx, Math.floorDiv(minX, cellSize)), cy0 = Math.max(minCy, Math.floorDiv(minY, cellSize));
+        int cx1 = Math.min(maxCx, Math.floorDiv(maxX, cellSize)), cy1 = Math.min(maxCy, Math.floorDiv(maxY, cellSize));
+        if (cx0 > cx1 || cy0 > cy1) return;
+        if ((long) (cx1 - cx0 + 1) * (cy1 - cy0 + 1) > cells.size()) {   // Sparse: walk occupied cells instead
+            for (int[] cell : cells.values()) visitCell(cell, minX, minY, maxX, maxY, visitor);
+            return;
+        }
+        for (int cy = cy0; cy <= cy1; cy++) {
+            for (int cx = cx0; cx <= cx1; cx++) {
+                int[] cell = cells.get(key(cx, cy));
+                if (cell != null) visitCell(cell, minX, minY, maxX, maxY, visitor);
+            }
+        }
+    }
+
+    private void visitCell(int[] cell, int minX, int minY, int maxX, int maxY, IntConsumer visitor) {
+        for (int i = 1; i <= cell[0]; i++) {
+            int id = cell[i];
+            if (xs[id] >= minX && xs[id] <= maxX && ys[id] >= minY && ys[id] <= maxY) visitor.accept(id);
+        }
+    }
+
+    private void remove(int id) {
+        long key = key(Math.floorDiv(xs[id], cellSize), Math.floorDiv(ys[id], cellSize));
+        int[] cell = cells.get(key);
+        for (int i = 1; i <= cell[0]; i++) {
+            if (cell[i] == id) {
+                cell[i] = cell[cell[0]--];
+                break;
+            }
+        }
+        if (cell[0] == 0) cells.remove(key);
+        present[id] = false;
+        size--;
+    }
+
+    private static long key(int cx, int cy) {
+        return ((long) cx << 32) | (cy & 0xFFFFFFFFL);
+    }
+}
+
+// Uniform grid of int ids for rectangle queries; an id may be stored in many cells
+class GridIndex {
+    private static final int MAX_CELLS_PER_ID = 256;   // Larger shapes go to the always-checked list
+
+    private final int cellSize;
+    private final Map<Long, int[]> cells = new HashMap<>();   // Cell key -> [size, ids...]
+    private int[] oversized = new int[16];
+    private int[] oversizedBounds = new int[64];   // minX, minY, maxX, maxY per oversized id
+    private int oversizedCount;
+    private int[] seen = new int[64];   // Per-id stamp so a query reports each id once
+    private int query;
+
+    GridIndex(int cellSize) {
+        this.cellSize = cellSize;
+    }
+
+    void clear() {
+        cells.clear();
+        oversizedCount = 0;
+    }
+
+    // Store id in every cell overlapping the rectangle
+    void insertRect(int id, int minX, int minY, int maxX, int maxY) {
+        int cx0 = Math.floorDiv(minX, cellSize), cy0 = Math.floorDiv(minY, cellSize);
+        int cx1 = Math.floorDiv(maxX, cellSize), cy1 = Math.floorDiv(maxY, cellSize);
+        if ((long) (cx1 - cx0 + 1) * (cy1 - cy0 + 1) > MAX_CELLS_PER_ID) {
+            addOversized(id, minX, minY, maxX, maxY);
+            return;
+        }
+        for (int cy = cy0; cy <= cy1; cy++) {
+            for (int cx = cx0; cx <= cx1; cx++) add(cx, cy, id);
+        }
+    }
+
+    // Store id in every cell the segment passes through (grid traversal)
+    void insertSegment(int id, int x1, int y1, int x2, int y2) {
+        int cx = Math.floorDiv(x1, cellSize), cy = Math.floorDiv(y1, cellSize);
+        int endX = Math.floorDiv(x2, cellSize), endY = Math.floorDiv(y2, cellSize);
+        int steps = Math.abs(endX - cx) + Math.abs(endY - cy);
+        if (steps >= MAX_CELLS_PER_ID) {
+            addOversized(id, Math.min(x1, x2), Math.min(y1, y2), Math.max(x1, x2), Math.max(y1, y2));
+            return;
+        }
+        int dx = x2 - x1, dy = y2 - y1;
+        int stepX = Integer.signum(dx), stepY = Integer.signum(dy);
+        double tMaxX = dx == 0 ? Double.POSITIVE_INFINITY : ((stepX > 0 ? (cx + 1) * cellSize : cx * cellSize) - x1) / (double) dx;
+        double tMaxY = dy == 0 ? Double.POSITIVE_INFINITY : ((stepY > 0 ? (cy + 1) * cellSize : cy * cellSize) - y1) / (double) dy;
+        double tDeltaX = dx == 0 ? Double.POSITIVE_INFINITY : cellSize / (double) Math.abs(dx);
+        double tDeltaY = dy == 0 ? Double.POSITIVE_INFINITY : cellSize / (double) Math.abs(dy);
+        add(cx, cy, id);
+        for (int i = 0; i < steps; i++) {
+            if (tMaxX < tMaxY) {
+                tMaxX += tDeltaX;
+                cx += stepX;
+            } else {
+                tMaxY += tDeltaY;
+                cy += stepY;
+            }
+            add(cx, cy, id);
+        }
+    }
+
+    // Visit every id stored in a cell overlapping the rectangle, once each
+    void query(int minX, int minY, int maxX, int maxY, IntConsumer visitor) {
+        if (++query == 0) {
+            Arrays.fill(seen, 0);
+            query = 1;
+        }
+        int cx0 = Math.floorDiv(minX, cellSize), cy0 = Math.floorDiv(minY, cellSize);
+        int cx1 = Math.floorDiv(maxX, cellSize), cy1 = Math.floorDiv(maxY, cellSize);
+        for (int cy = cy0; cy <= cy1; cy++) {
+            for (int cx = cx0; cx <= cx1; cx++) {
+                int[] cell = cells.get(key(cx, cy));
+                if (cell == null) continue;
+                for (int i = 1; i <= cell[0]; i++) visitOnce(cell[i], visitor);
+            }
+        }
+        for (int i = 0; i < oversizedCount; i++) {
+            int b = 4 * i;
+            if (oversizedBounds[b] <= maxX && oversizedBounds[b + 2] >= minX
+                    && oversizedBounds[b + 1] <= maxY && oversizedBounds[b + 3] >= minY) {
+                visitOnce(oversized[i], visitor);
+            }
+        }
+    }
+
+    private void visitOnce(int id, IntConsumer visitor) {
+        if (id >= seen.length) seen = Arrays.copyOf(seen, Math.max(id + 1, seen.length * 2));
+        if (seen[id] == query) return;
+        seen[id] = query;
+        visitor.accept(id);
+    }
+
+    private void add(int cx, int cy, int id) {
+        long key = key(cx, cy);
+        int[] cell = cells.get(key);
+        if (cell == null) {
+            cell = new int[5];
+            cells.put(key, cell);
+        } else if (cell[0] + 1 == cell.length) {
+            cell = Arrays.copyOf(cell, cell.length * 2);
+            cells.put(key, cell);
+        } else if (cell[0] > 0 && cell[cell[0]] == id) {
+            return;   // Already stored (rectangle and segment of the same id)
+        }
+        cell[++cell[0]] = id;
+    }
+
+    private void addOversized(int id, int minX, int minY, int maxX, int maxY) {
+        if (oversizedCount == oversized.length) {
+            oversized = Arrays.copyOf(oversized, oversizedCount * 2);
+            oversizedBounds = Arrays.copyOf(oversizedBounds, oversizedCount * 8);
+        }
+        oversized[oversizedCount] = id;
+        int b = 4 * oversizedCount++;
+        oversizedBounds[b] = minX;
+        oversizedBounds[b + 1] = minY;
+        oversizedBounds[b + 2] = maxX;
+        oversizedBounds[b + 3] = maxY;
+    }
+
+    private static long key(int cx, int cy) {
+        return ((long) cx << 32) | (cy & 0xFFFFFFFFL);
+    }
+}
+
+// Draws a CompactGraph into a cached image. Only dirty regions are redrawn, on a background
+// thread; the EDT calls sync/reload after mutations and paint from paintComponent.
+class TopologyRenderer {
+    private static final int CELL = 64;
+    private static final int NODE_RADIUS = 10;
+    private static final int CHAR_WIDTH = 7;       // Approximate label glyph width
+    private static final int MIN_LABEL_LENGTH = 60;   // Shorter edges are drawn without a label
+
+    private final CompactGraph graph;
+    private final JComponent target;   // Repainted when a tile lands; null when rendering headless
+    private final Color background;
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "topology-renderer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Snapshot, guarded by this
+    private String[] nodeNames = new String[16];
+    private int[] nodeX = new int[16], nodeY = new int[16];
+    private int nodeCount;
+    private int[] edgeFrom = new int[16], edgeTo = new int[16], edgeCost = new int[16], edgeBandwidth = new int[16];
+    private int edgeCount;
+    private final SpatialIndex nodeCells = new SpatialIndex(CELL);
+    private final GridIndex edgeCells = new GridIndex(CELL);
+    private int nodeReach = NODE_RADIUS + 1;   // Widest extent of a node and its name right of its centre
+    private Rectangle viewport = new Rectangle(0, 0, 0, 0);   // Area covered by the canvas
+    private Rectangle dirty;     // Area waiting to be redrawn, null if none
+    private boolean scheduled;   // A render task is queued or running
+    private long tiles, tileNanos;
+
+    private BufferedImage canvas;   // EDT only
+
+    TopologyRenderer(CompactGraph graph, JComponent target, Color background) {
+        this.graph = graph;
+        this.target = target;
+        this.background = background;
+    }
+
+    // Copy nodes and edges added since the last call and mark their areas dirty
+    synchronized void sync() {
+        while (nodeCount < graph.nodeCount()) {
+            int v = nodeCount;
+            if (v == nodeX.length) {
+                nodeNames = Arrays.copyOf(nodeNames, v * 2);
+                nodeX = Arrays.copyOf(nodeX, v * 2);
+                nodeY = Arrays.copyOf(nodeY, v * 2);
+            }
+            nodeNames[v] = graph.name(v);
+            nodeX[v] = graph.x(v);
+            nodeY[v] = graph.y(v);
+            nodeCount++;
+            Rectangle bounds = nodeBounds(v);
+            nodeCells.put(v, nodeX[v], nodeY[v]);
+            nodeReach = Math.max(nodeReach, bounds.x + bounds.width - nodeX[v]);
+            markDirty(bounds);
+        }
+        while (edgeCount < graph.edgeCount()) {
+            int e = edgeCount;
+            if (e == edgeFrom.length) {
+                edgeFrom = Arrays.copyOf(edgeFrom, e * 2);
+                edgeTo = Arrays.copyOf(edgeTo, e * 2);
+                edgeCost = Arrays.copyOf(edgeCost, e * 2);
+                edgeBandwidth = Arrays.copyOf(edgeBandwidth, e * 2);
+            }
+            edgeFrom[e] = graph.edgeFrom(e);
+            edgeTo[e] = graph.edgeTo(e);
+            edgeCost[e] = graph.edgeCost(e);
+            edgeBandwidth[e] = graph.edgeBandwidth(e);
+            edgeCount++;
+            int x1 = nodeX[edgeFrom[e]], y1 = nodeY[edgeFrom[e]], x2 = nodeX[edgeTo[e]], y2 = nodeY[edgeTo[e]];
+            edgeCells.insertSegment(e, x1, y1, x2, y2);
+            Rectangle bounds = new Rectangle(Math.min(x1, x2), Math.min(y1, y2), Math.abs(x2 - x1) + 1, Math.abs(y2 - y1) + 1);
+            Rectangle label = labelBounds(e);
+            if (label != null) {
+                edgeCells.insertRect(e, label.x, label.y, label.x + label.width, label.y + label.height);
+                bounds.add(label);
+            }
+            markDirty(bounds);
+        }
+        schedule();
+    }
+
+    // Rebuild the snapshot from scratch (after a node moved) and redraw everything
+    synchronized void reload() {
+        nodeCount = 0;
+        edgeCount = 0;
+        nodeCells.clear();
+        edgeCells.clear();
+        sync();
+        invalidateAll();
+    }
+
+    synchronized void invalidateAll() {
+        markDirty(new Rectangle(0, 0, Integer.MAX_VALUE / 2, Integer.MAX_VALUE / 2));
+        schedule();
+    }
+
+    // EDT: draw the cached image, allocating a new one (and scheduling a full redraw) on resize
+    void paint(Graphics g, int width, int height) {
+        if (width <= 0 || height <= 0) return;
+        if (canvas == null || canvas.getWidth() != width || canvas.getHeight() != height) {
+            canvas = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            Graphics2D fill = canvas.createGraphics();
+            fill.setColor(background);
+            fill.fillRect(0, 0, width, height);
+            fill.dispose();
+            setViewport(new Rectangle(0, 0, width, height));
+        }
+        g.drawImage(canvas, 0, 0, null);
+    }
+
+    synchronized void setViewport(Rectangle area) {
+        viewport = new Rectangle(area);
+        invalidateAll();
+    }
+
+    synchronized String stats() {
+        return String.format("renderer: nodes=%d edges=%d tiles=%d avgTile=%.2fms", nodeCount, edgeCount, tiles,
+                tiles == 0 ? 0 : tileNanos / 1e6 / tiles);
+    }
+
+    // Geometry intersecting one region, copied under the lock so drawing can run without it
+    private static final class Scene {
+        final Rectangle region;
+        int[] lines = new int[64];   // x1, y1, x2, y2 per edge
+        String[] lineLabels = new String[16];   // null for edges drawn without a label
+        int lineCount;
+        int[] points = new int[32];   // x, y per node
+        String[] pointNames = new String[16];
+        int pointCount;
+
+        Scene(Rectangle region) {
+            this.region = region;
+        }
+
+        void addLine(int x1, int y1, int x2, int y2, String label) {
+            if (lineCount == lineLabels.length) {
+                lines = Arrays.copyOf(lines, 8 * lineCount);
+                lineLabels = Arrays.copyOf(lineLabels, 2 * lineCount);
+            }
+            int i = 4 * lineCount;
+            lines[i] = x1;
+            lines[i + 1] = y1;
+            lines[i + 2] = x2;
+            lines[i + 3] = y2;
+            lineLabels[lineCount++] = label;
+        }
+
+        void addPoint(int x, int y, String name) {
+            if (pointCount == pointNames.length) {
+                points = Arrays.copyOf(points, 4 * pointCount);
+                pointNames = Arrays.copyOf(pointNames, 2 * pointCount);
+            }
+            points[2 * pointCount] = x;
+            points[2 * pointCount + 1] = y;
+            pointNames[pointCount++] = name;
+        }
+    }
+
+    // Draw everything intersecting region into a new tile whose origin is region's corner.
+    // Only the copy of the geometry holds the lock; the drawing itself does not.
+    BufferedImage renderRegion(Rectangle region) {
+        Scene scene;
+        synchronized (this) {
+            scene = capture(region);
+        }
+        return draw(scene);
+    }
+
+    // Copy what intersects region out of the snapshot; the caller holds the lock
+    private Scene capture(Rectangle region) {
+        Scene scene = new Scene(region);
+        int minX = region.x - 1, minY = region.y - 1;
+        int maxX = region.x + region.width + 1, maxY = region.y + region.height + 1;
+        edgeCells.query(minX, minY, maxX, maxY, e -> scene.addLine(nodeX[edgeFrom[e]], nodeY[edgeFrom[e]],
+                nodeX[edgeTo[e]], nodeY[edgeTo[e]], labelBounds(e) != null ? edgeLabel(e) : null));
+        int pad = NODE_RADIUS + 1;
+        nodeCells.inRect(minX - nodeReach, minY - pad, maxX + pad, maxY + pad,
+                v -> scene.addPoint(nodeX[v], nodeY[v], nodeNames[v]));
+        return scene;
+    }
+
+    private BufferedImage draw(Scene scene) {
+        long start = System.nanoTime();
+        Rectangle region = scene.region;
+        BufferedImage tile = new BufferedImage(region.width, region.height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = tile.createGraphics();
+        g.setColor(background);
+        g.fillRect(0, 0, region.width, region.height);
+        g.translate(-region.x, -region.y);
+        g.setClip(region);
+
+        // Draw edges
+        g.setColor(Color.BLACK);
+        int[] lines = scene.lines;
+        for (int i = 0; i < scene.lineCount; i++) {
+            int x1 = lines[4 * i], y1 = lines[4 * i + 1], x2 = lines[4 * i + 2], y2 = lines[4 * i + 3];
+            g.drawLine(x1, y1, x2, y2);
+            if (scene.lineLabels[i] != null) g.drawString(scene.lineLabels[i], (x1 + x2) / 2, (y1 + y2) / 2);
+        }
+
+        // Draw nodes
+        int[] points = scene.points;
+        for (int i = 0; i < scene.pointCount; i++) {
+            int x = points[2 * i], y = points[2 * i + 1];
+            g.setColor(Color.BLUE);
+            g.fillOval(x - NODE_RADIUS, y - NODE_RADIUS, 2 * NODE_RADIUS, 2 * NODE_RADIUS);
+            g.setColor(Color.WHITE);
+            g.drawString(scene.pointNames[i], x - 5, y + 5);
+        }
+        g.dispose();
+        synchronized (this) {
+            tiles++;
+            tileNanos += System.nanoTime() - start;
+        }
+        return tile;
+    }
+
+    private void markDirty(Rectangle area) {
+        if (dirty == null) dirty = new Rectangle(area);
+        else dirty.add(area);
+    }
+
+    // Headless renderers (no target) are driven by renderDirty instead
+    private void schedule() {
+        if (target == null || scheduled || dirty == null) return;
+        scheduled = true;
+        worker.execute(this::renderPending);
+    }
+
+    // Render the visible part of the dirty area; returns its bounds, or null if nothing visible changed.
+    // The dirty area, viewport and geometry are taken under the lock and drawn after releasing it, so
+    // sync, reload and setViewport on the EDT never wait for a draw. Changes made meanwhile mark the
+    // area dirty again and queue the next render.
+    Rectangle renderDirty(BufferedImage[] tileOut) {
+        Scene scene;
+        synchronized (this) {
+            scheduled = false;
+            Rectangle region = dirty == null ? null : dirty.intersection(viewport);
+            dirty = null;
+            if (region == null || region.isEmpty()) return null;
+            scene = capture(region);
+        }
+        tileOut[0] = draw(scene);
+        return scene.region;
+    }
+
+    // Worker thread: render the dirty area and hand the tile to the EDT
+    private void renderPending() {
+        BufferedImage[] tileOut = new BufferedImage[1];
+        Rectangle region = renderDirty(tileOut);
+        if (region == null) return;
+        BufferedImage tile = tileOut[0];
+        SwingUtilities.invokeLater(() -> {
+            if (canvas == null) return;
+            Graphics2D g = canvas.createGraphics();
+            g.drawImage(tile, region.x, region.y, null);
+            g.dispose();
+            target.repaint(region);
+        });
+    }
+
+    private Rectangle nodeBounds(int v) {
+        int right = Math.max(nodeX[v] + NODE_RADIUS, nodeX[v] - 5 + CHAR_WIDTH * nodeNames[v].length());
+        return new Rectangle(nodeX[v] - NODE_RADIUS - 1, nodeY[v] - NODE_RADIUS - 1,
+                right - nodeX[v] + NODE_RADIUS + 2, 2 * NODE_RADIUS + 2);
+    }
+
+    // Area of the edge's "C:.. B:.." label, or null if the edge is too short to carry one
+    private Rectangle labelBounds(int e) {
+        int x1 = nodeX[edgeFrom[e]], y1 = nodeY[edgeFrom[e]], x2 = nodeX[edgeTo[e]], y2 = nodeY[edgeTo[e]];
+        if (Math.hypot(x2 - x1, y2 - y1) < MIN_LABEL_LENGTH) return null;
+        return new Rectangle((x1 + x2) / 2, (y1 + y2) / 2 - 12, CHAR_WIDTH * edgeLabel(e).length(), 16);
+    }
+
+    private String edgeLabel(int e) {
+        return "C:" + edgeCost[e] + " B:" + edgeBandwidth[e];
+    }
+}
+
+// Multi-objective label-setting search over (cost, latency). Not thread-safe: one instance per thread.
+class ParetoSearch {
+    private static final int LABEL_BITS = 24;
+    private static final int MAX_LABELS = 1 << LABEL_BITS;   // Pool cap per query
+
+    static final int DEFAULT_LABELS_PER_NODE = 64;
+
+    final CsrGraph graph;
+    private final boolean negativeWeights;   // Some edge has a negative cost or a non-positive bandwidth
+    private int maxLabelsPerNode;
+
+    // Label pool; label ids index these arrays
+    private int[] labelNode = new int[1024];
+    private int[] labelPred = new int[1024];   // Label this one extends, -1 at the source
+    private int[] labelNext = new int[1024];   // Next label in the same node's list
+    private long[] labelCost = new long[1024];
+    private long[] labelLatency = new long[1024];
+    private boolean[] labelDead = new boolean[1024];
+    private int labelCount;
+
+    private final int[] head;    // First label of each node's list, -1 if none
+    private final int[] count;   // Live labels per node
+    private final int[] stamp;   // head/count are valid only where stamp[v] == query
+    private int query;
+    // Labels by cost. Label paths are simple (a cycle is dominated by its own prefix), so no label costs
+    // more than all edges together; when that total fits in 39 bits, (cost << LABEL_BITS | label) packs
+    // into one long. Otherwise (cost, label) pairs are kept unpacked. Exactly one of the two is non-null.
+    private final LongHeap packedHeap;
+    private final PairHeap pairHeap;
+
+    private int[] frontier = new int[16];   // Target labels by ascending cost
+    private int frontierSize;
+    private boolean truncated;
+
+    ParetoSearch(CsrGraph graph) {
+        this.graph = graph;
+        boolean negative = false;
+        long totalCost = 0;
+        for (int slot = 0; slot < graph.costs.length; slot++) {
+            negative |= graph.costs[slot] < 0 || graph.bandwidths[slot] <= 0;
+            totalCost += graph.costs[slot];
+        }
+        this.negativeWeights = negative;
+        boolean packed = totalCost < 1L << (63 - LABEL_BITS);
+        this.packedHeap = packed ? new LongHeap(1024) : null;
+        this.pairHeap = packed ? null : new PairHeap(1024);
+        int n = graph.nodeCount;
+        this.head = new int[n];
+        this.count = new int[n];
+        this.stamp = new int[n];
+    }
+
+    // Compute the frontier from source to target, keeping at most maxLabelsPerNode labels per node;
+    // returns its size. Throws IllegalArgumentException if the graph has negative weights.
+    int run(int source, int target, int maxLabelsPerNode) {
+        if (negativeWeights) throw new IllegalArgumentException("Pareto paths need non-negative costs and positive bandwidths");
+        if (maxLabelsPerNode < 1) throw new IllegalArgumentException("maxLabelsPerNode must be positive: " + maxLabelsPerNode);
+        this.maxLabelsPerNode = maxLabelsPerNode;
+        if (++query == 0) {
+            Arrays.fill(stamp, 0);
+            query = 1;
+        }
+        labelCount = 0;
+        frontierSize = 0;
+        truncated = false;
+        if (packedHeap != null) packedHeap.clear();
+        else pairHeap.clear();
+        int[] offsets = graph.offsets, targets = graph.targets, costs = graph.costs, bandwidths = graph.bandwidths;
+        offer(source, 0, 0, -1);
+
+        while (packedHeap != null ? !packedHeap.isEmpty() : !pairHeap.isEmpty()) {
+            int label = packedHeap != null ? (int) (packedHeap.poll() & (MAX_LABELS - 1)) : pairHeap.poll();
+            if (labelDead[label]) continue;
+            int u = labelNode[label];
+            if (u == target) continue;   // Target labels are results, not expanded
+            long cost = labelCost[label], latency = labelLatency[label];
+            if (dominatedAt(target, cost, latency, label)) continue;
+            for (int slot = offsets[u]; slot < offsets[u + 1]; slot++) {
+                long newCost = cost + costs[slot];
+                long newLatency = latency + 100 / bandwidths[slot];
+                if (dominatedAt(target, newCost, newLatency, -1)) continue;   // Early prune against results
+                offer(targets[slot], newCost, newLatency, label);
+            }
+        }
+        collectFrontier(target);
+        return frontierSize;
+    }
+
+    long cost(int i) {
+        return labelCost[frontier[i]];
+    }
+
+    long latency(int i) {
+        return labelLatency[frontier[i]];
+    }
+
+    // Node ids of the i-th frontier path, source first
+    int[] path(int i) {
+        int length = 0;
+        for (int l = frontier[i]; l != -1; l = labelPred[l]) length++;
+        int[] path = new int[length];
+        for (int l = frontier[i], k = length - 1; l != -1; l = labelPred[l]) path[k--] = labelNode[l];
+        return path;
+    }
+
+    // Whether the last run discarded labels because of maxLabelsPerNode or the pool cap
+    boolean truncated() {
+        return truncated;
+    }
+
+    // Whether a live label at v other than self has cost <= c and latency <= l
+    private boolean dominatedAt(int v, long c, long l, int self) {
+        if (stamp[v] != query) return false;
+        for (int x = head[v]; x != -1; x = labelNext[x]) {
+            if (x != self && labelCost[x] <= c && labelLatency[x] <= l) return true;
+        }
+        return false;
+    }
+
+    // Add a label at v unless one there dominates it; unlink the labels it dominates
+    private void offer(int v, long c, long l, int pred) {
+        if (stamp[v] != query) {
+            stamp[v] = query;
+            head[v] = -1;
+            count[v] = 0;
+        }
+        int previous = -1;
+        for (int x = head[v]; x != -1; x = labelNext[x]) {
+            if (labelCost[x] <= c && labelLatency[x] <= l) return;
+            if (c <= labelCost[x] && l <= labelLatency[x]) {
+                labelDead[x] = true;   // Left in the heap; skipped when polled
+                if (previous == -1) head[v] = labelNext[x];
+                else labelNext[previous] = labelNext[x];
+                count[v]--;
+            } else {
+                previous = x;
+            }
+        }
+        if (count[v] >= maxLabelsPerNode || labelCount >= MAX_LABELS) {
+            truncated = true;
+            return;
+        }
+        if (labelCount == labelNode.length) grow();
+        int label = labelCount++;
+        labelNode[label] = v;
+        labelPred[label] = pred;
+        labelCost[label] = c;
+        labelLatency[label] = l;
+        labelDead[label] = false;
+        labelNext[label] = head[v];
+        head[v] = label;
+        count[v]++;
+        if (packedHeap != null) packedHeap.add((c << LABEL_BITS) | label);
+        else pairHeap.add(c, label);
+    }
+
+    private void grow() {
+        int size = labelNode.length * 2;
+        labelNode = Arrays.copyOf(labelNode, size);
+        labelPred = Arrays.copyOf(labelPred, size);
+        labelNext = Arrays.copyOf(labelNext, size);
+        labelCost = Arrays.copyOf(labelCost, size);
+        labelLatency = Arrays.copyOf(labelLatency, size);
+        labelDead = Arrays.copyOf(labelDead, size);
+    }
+
+    // Target labels sorted by cost; the list is already mutually non-dominated
+    private void collectFrontier(int target) {
+        if (stamp[target] != query) return;
+        if (frontier.length < count[target]) frontier = new int[count[target]];
+        for (int x = head[target]; x != -1; x = labelNext[x]) {
+            int i = frontierSize++;
+            while (i > 0 && labelCost[frontier[i - 1]] > labelCost[x]) {
+                frontier[i] = frontier[i - 1];
+                i--;
+            }
+            frontier[i] = x;
+        }
+    }
+}
+
+// Row-major int matrix of cheapest-path costs (-1 = unreachable), held outside the Java heap
+class DistanceMatrix {
+    static final int MAGIC = 0x54414D44;   // "DMAT" in little-endian
+    static final int VERSION = 1;
+    private static final int HEADER_INTS = 4;
+
+    final int rows;
+    final int cols;
+    private final ByteBuffer buffer;
+    private final int cellsOffset;   // Byte offset of cell (0, 0)
+
+    private DistanceMatrix(ByteBuffer buffer) {
+        this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+        this.rows = buffer.getInt(8);
+        this.cols = buffer.getInt(12);
+        this.cellsOffset = 4 * (HEADER_INTS + rows + cols);
+    }
+
+    // Compute costs from each source to each target, one fork-join task per source.
+    // file != null: the matrix is built directly in a memory-mapped file at that path.
+    static DistanceMatrix compute(CsrGraph graph, int[] sources, int[] targets, ForkJoinPool pool, Path file) throws IOException {
+        long bytes = 4L * (HEADER_INTS + sources.length + targets.length + (long) sources.length * targets.length);
+        if (bytes > Integer.MAX_VALUE) throw new IllegalArgumentException("Matrix too large: " + bytes + " bytes");
+        ByteBuffer buffer;
+        if (file == null) {
+            buffer = ByteBuffer.allocateDirect((int) bytes);
+        } else {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+            }
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, sources.length).putInt(12, targets.length);
+        for (int i = 0; i < sources.length; i++) buffer.putInt(4 * (HEADER_INTS + i), sources[i]);
+        for (int j = 0; j < targets.length; j++) buffer.putInt(4 * (HEADER_INTS + sources.length + j), targets[j]);
+
+        DistanceMatrix matrix = new DistanceMatrix(buffer);
+        Map<Thread, ShortestPathEngine> engines = new ConcurrentHashMap<>();   // One per worker thread
+        List<RowTask> tasks = new ArrayList<>(sources.length);
+        for (int i = 0; i < sources.length; i++) tasks.add(new RowTask(matrix, graph, engines, i, sources[i], targets));
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(tasks);
+            }
+        });
+        if (buffer instanceof MappedByteBuffer) ((MappedByteBuffer) buffer).force();
+        return matrix;
+    }
+
+    // Map a matrix file written by compute
+    static DistanceMatrix open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+            if (channel.size() < 4 * HEADER_INTS || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException("Not a distance matrix file: " + file);
+            }
+            DistanceMatrix matrix = new DistanceMatrix(buffer);
+            if (matrix.cellsOffset + 4L * matrix.rows * matrix.cols != channel.size()) {
+                throw new IOException("Truncated distance matrix file: " + file);
+            }
+            return matrix;
+        }
+    }
+
+    int get(int row, int col) {
+        return buffer.getInt(cellsOffset + 4 * (row * cols + col));
+    }
+
+    // Node id of a row's source / a column's target
+    int source(int row) {
+        return buffer.getInt(4 * (HEADER_INTS + row));
+    }
+
+    int target(int col) {
+        return buffer.getInt(4 * (HEADER_INTS + rows + col));
+    }
+
+    private void set(int row, int col, int value) {
+        buffer.putInt(cellsOffset + 4 * (row * cols + col), value);
+    }
+
+    // Fills one row; rows touch disjoint byte ranges, so tasks write the shared buffer without locking
+    private static class RowTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final DistanceMatrix matrix;
+        private final CsrGraph graph;
+        private final Map<Thread, ShortestPathEngine> engines;
+        private final int row, source;
+        private final int[] targets;
+
+        RowTask(DistanceMatrix matrix, CsrGraph graph, Map<Thread, ShortestPathEngine> engines, int row, int source, int[] targets) {
+            this.matrix = matrix;
+            this.graph = graph;
+            this.engines = engines;
+            this.row = row;
+            this.source = source;
+            this.targets = targets;
+        }
+
+        @Override
+        protected void compute() {
+            ShortestPathEngine engine = engines.computeIfAbsent(Thread.currentThread(), t -> new ShortestPathEngine(graph));
+            engine.runToAll(source, targets);
+            for (int col = 0; col < targets.length; col++) {
+                long cost = engine.cost(targets[col]);
+                matrix.set(row, col, (int) Math.min(cost, Integer.MAX_VALUE));
+            }
+        }
+    }
+}
+
+// Binary min-heap of primitive longs
+class LongHeap {
+    private long[] items;
+    private int size;
+
+    LongHeap(int capacity) {
+        items = new long[Math.max(1, capacity)];
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void add(long value) {
+        if (size == items.length) items = Arrays.copyOf(items, size * 2);
+        int i = size++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (items[parent] <= value) break;
+            items[i] = items[parent];
+            i = parent;
+        }
+        items[i] = value;
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    long poll() {
+        long top = items[0];
+        long last = items[--size];
+        int i = 0;
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && items[child + 1] < items[child]) child++;
+            if (last <= items[child]) break;
+            items[i] = items[child];
+            i = child;
+        }
+        items[i] = last;
+        return top;
+    }
+}
+
+// Binary min-heap of (long key, int value) pairs, ordered by key then value
+class PairHeap {
+    private long[] keys;
+    private int[] values;
+    private int size;
+
+    PairHeap(int capacity) {
+        keys = new long[Math.max(1, capacity)];
+        values = new int[keys.length];
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void add(long key, int value) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        int i = size++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!less(key, value, keys[parent], values[parent])) break;
+            keys[i] = keys[parent];
+            values[i] = values[parent];
+            i = parent;
+        }
+        keys[i] = key;
+        values[i] = value;
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    // Remove the smallest pair and return its value
+    int poll() {
+        int top = values[0];
+        long lastKey = keys[--size];
+        int lastValue = values[size];
+        int i = 0;
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && less(keys[child + 1], values[child + 1], keys[child], values[child])) child++;
+            if (!less(keys[child], values[child], lastKey, lastValue)) break;
+            keys[i] = keys[child];
+            values[i] = values[child];
+            i = child;
+        }
+        keys[i] = lastKey;
+        values[i] = lastValue;
+        return top;
+    }
+
+    private static boolean less(long key, int value, long otherKey, int otherValue) {
+        return key < otherKey || (key == otherKey && value < otherValue);
+    }
+}
+
+// Headless benchmarks (run through NetworkTopologyGUI.main)
+class TopologyBenchmark {
+    // Random connected graph: a ring plus (edgesPerNode - 1) random links per node
+    static CompactGraph randomGraph(int nodes, int edgesPerNode, long seed) {
+        Random random = new Random(seed);
+        CompactGraph graph = new CompactGraph();
+        for (int i = 0; i < nodes; i++) graph.addNode("n" + i, random.nextInt(100_000), random.nextInt(100_000));
+        for (int i = 0; i < nodes; i++) {
+            graph.addEdge(i, (i + 1) % nodes, 1 + random.nextInt(1000), 1 + random.nextInt(100));
+            for (int k = 1; k < edgesPerNode; k++) {
+                graph.addEdge(i, random.nextInt(nodes), 1 + random.nextInt(1000), 1 + random.nextInt(100));
+            }
+        }
+        return graph;
+    }
+
+    // Same graph built through the map-based Graph
+    static Graph toMapGraph(CompactGraph compact) {
+        Graph graph = new Graph();
+        for (int v = 0; v < compact.nodeCount(); v++) graph.addNode(compact.name(v), compact.x(v), compact.y(v));
+        CsrGraph csr = compact.csr();
+        for (int e = 0; e < csr.edgeCount; e++) {
+            graph.addEdge(compact.name(csr.edgeU.get(e)), compact.name(csr.edgeV.get(e)), csr.edgeCost.get(e), csr.edgeBandwidth.get(e));
+        }
+        return graph;
+    }
+
+    // Build, CSR, Prim and Dijkstra timings on the compact core; the map-based baseline runs
+    // on a graph of legacyNodes nodes (0 skips it)
+    static void benchmarkCore(int nodes, int edgesPerNode, int legacyNodes) {
+        long start = System.nanoTime();
+        CompactGraph graph = randomGraph(nodes, edgesPerNode, 42);
+        double build = millisSince(start);
+        start = System.nanoTime();
+        graph.csr();
+        double csr = millisSince(start);
+        System.out.printf("compact: nodes=%d edges=%d build=%.0fms csr=%.0fms%n", graph.nodeCount(), graph.edgeCount(), build, csr);
+        runAlgorithms("compact", graph::primMST, () -> graph.dijkstra("n0", "n" + (nodes / 2)));
+
+        if (legacyNodes > 0) {
+            CompactGraph small = randomGraph(legacyNodes, edgesPerNode, 42);
+            Graph maps = toMapGraph(small);
+            System.out.printf("baseline graph: nodes=%d edges=%d%n", small.nodeCount(), small.edgeCount());
+            runAlgorithms("maps   ", maps::primMSTOnMaps, () -> maps.dijkstraOnMaps("n0", "n" + (legacyNodes / 2)));
+            runAlgorithms("compact", small::primMST, () -> small.dijkstra("n0", "n" + (legacyNodes / 2)));
+        }
+    }
+
+    // Prim vs parallel Boruvka at 1, 2, 4, ... threads; every run must produce Prim's forest
+    static void benchmarkBoruvka(int nodes, int edgesPerNode) {
+        CompactGraph graph = randomGraph(nodes, edgesPerNode, 42);
+        graph.csr();
+        long start = System.nanoTime();
+        SpanningForest prim = graph.spanningForest();
+        double primMillis = millisSince(start);
+        System.out.printf("nodes=%d edges=%d prim=%.0fms (%s)%n", graph.nodeCount(), graph.edgeCount(), primMillis, prim.toResult());
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; ; threads = Math.min(threads * 2, cores)) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            graph.parallelSpanningForest(pool);   // Warm-up
+            start = System.nanoTime();
+            SpanningForest forest = graph.parallelSpanningForest(pool);
+            double millis = millisSince(start);
+            pool.shutdown();
+            System.out.printf("boruvka threads=%d %.0fms (%.2fx vs prim) matches prim: %b%n",
+                    threads, millis, primMillis / millis, forest.sameForest(prim));
+            if (threads == cores) break;
+        }
+    }
+
+    // Pareto frontier queries on random pairs; the cheapest frontier entry must equal dijkstra
+    static void benchmarkPareto(int nodes, int edgesPerNode, int queries) {
+        CompactGraph graph = randomGraph(nodes, edgesPerNode, 5);
+        Random random = new Random(13);
+        graph.paretoPaths("n0", "n1", ParetoSearch.DEFAULT_LABELS_PER_NODE);   // Build the CSR view and label pools outside the timing
+
+        long frontierTotal = 0;
+        int mismatches = 0, largest = 0, truncated = 0;
+        long start = System.nanoTime();
+        for (int q = 0; q < queries; q++) {
+            String from = "n" + random.nextInt(nodes), to = "n" + random.nextInt(nodes);
+            ParetoFrontier result = graph.paretoPaths(from, to, ParetoSearch.DEFAULT_LABELS_PER_NODE);
+            List<ParetoFrontier.Route> frontier = result.routes;
+            frontierTotal += frontier.size();
+            largest = Math.max(largest, frontier.size());
+            if (result.truncated) truncated++;
+            NetworkResult cheapest = graph.dijkstra(from, to);
+            if (frontier.isEmpty() ? cheapest.totalCost != -1
+                    : frontier.get(0).totalCost != cheapest.totalCost || frontier.get(0).totalLatency != cheapest.totalLatency) {
+                mismatches++;
+            }
+        }
+        double millis = millisSince(start);
+        System.out.printf("nodes=%d edges=%d queries=%d%n", graph.nodeCount(), graph.edgeCount(), queries);
+        System.out.printf("pareto+dijkstra: %.2f ms/query, avg frontier=%.1f, largest=%d, truncated=%d, cheapest mismatches=%d%n",
+                millis / queries, (double) frontierTotal / queries, largest, truncated, mismatches);
+    }
+
+    // size x size matrix between random nodes; spot-checks cells against dijkstra and, with a
+    // file, reopens the mapped matrix and compares it cell by cell
+    static void benchmarkMatrix(int nodes, int edgesPerNode, int size, Path file) throws IOException {
+        CompactGraph graph = randomGraph(nodes, edgesPerNode, 21);
+        graph.csr();
+        Random random = new Random(17);
+        List<String> sources = new ArrayList<>(), targets = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            sources.add("n" + random.nextInt(nodes));
+            targets.add("n" + random.nextInt(nodes));
+        }
+
+        long start = System.nanoTime();
+        DistanceMatrix matrix = graph.distanceMatrix(sources, targets, ForkJoinPool.commonPool(), file);
+        double millis = millisSince(start);
+        System.out.printf("nodes=%d edges=%d matrix=%dx%d threads=%d: %.0fms (%.2f ms/source)%n", graph.nodeCount(),
+                graph.edgeCount(), size, size, ForkJoinPool.commonPool().getParallelism(), millis, millis / size);
+
+        int mismatches = 0;
+        for (int k = 0; k < 100; k++) {
+            int row = random.nextInt(size), col = random.nextInt(size);
+            if (matrix.get(row, col) != graph.dijkstra(sources.get(row), targets.get(col)).totalCost) mismatches++;
+        }
+        System.out.println("dijkstra spot-check mismatches: " + mismatches + "/100");
+
+        if (file != null) {
+            start = System.nanoTime();
+            DistanceMatrix reopened = DistanceMatrix.open(file);
+            int differences = 0;
+            for (int row = 0; row < size; row++) {
+                for (int col = 0; col < size; col++) {
+                    if (reopened.get(row, col) != matrix.get(row, col)) differences++;
+                }
+            }
+            System.out.printf("reopened %s: scan=%.0fms differences=%d%n", file, millisSince(start), differences);
+        }
+    }
+
+    // Repeated queries over a fixed set of pairs on a stable graph, then again after one mutation
+    static void benchmarkCache(int nodes, int edgesPerNode, int queries, int pairs) {
+        Graph graph = toMapGraph(randomGraph(nodes, edgesPerNode, 3));
+        Random random = new Random(19);
+        String[][] workload = new String[pairs][];
+        for (int i = 0; i < pairs; i++) workload[i] = new String[]{"n" + random.nextInt(nodes), "n" + random.nextInt(nodes)};
+
+        for (int round = 0; round < 2; round++) {
+            long start = System.nanoTime();
+            for (String[] pair : workload) graph.dijkstra(pair[0], pair[1]);   // Misses fill the cache
+            double coldMillis = millisSince(start);
+            start = System.nanoTime();
+            for (int q = 0; q < queries; q++) {
+                String[] pair = workload[random.nextInt(pairs)];
+                graph.dijkstra(pair[0], pair[1]);
+            }
+            double warmMillis = millisSince(start);
+            System.out.printf("%s: cold %.3f ms/query, warm %.2f us/query%n", round == 0 ? "initial   " : "after edit",
+                    coldMillis / pairs, 1000 * warmMillis / queries);
+            System.out.println("  " + graph.getPathCache().stats());
+            graph.addEdge("n0", "n1", 1, 100);   // Bumps the version; every entry is now stale
+        }
+    }
+
+    // Stream random edge insertions into a graph with the dynamic MST enabled and compare the
+    // per-insert time with one full recompute; the final forest must equal Prim's
+    static void benchmarkDynamic(int nodes, int edgesPerNode, int inserts) {
+        CompactGraph graph = randomGraph(nodes, edgesPerNode, 23);
+        long start = System.nanoTime();
+        graph.enableDynamicMST();
+        double seedMillis = millisSince(start);
+
+        Random random = new Random(29);
+        start = System.nanoTime();
+        for (int i = 0; i < inserts; i++) {
+            graph.addEdge(random.nextInt(nodes), random.nextInt(nodes), 1 + random.nextInt(1000), 1 + random.nextInt(100));
+        }
+        double insertMillis = millisSince(start);
+
+        start = System.nanoTime();
+        SpanningForest recomputed = graph.csr().spanningForest();
+        double primMillis = millisSince(start);
+        boolean same = graph.spanningForest().sameForest(recomputed);
+
+        System.out.printf("nodes=%d edges=%d seed=%.0fms%n", graph.nodeCount(), graph.edgeCount(), seedMillis);
+        System.out.printf("dynamic: %d inserts, %.2f us/insert; full prim recompute=%.0fms; %s; matches prim: %b%n",
+                inserts, 1000 * insertMillis / inserts, primMillis, graph.primMST(), same);
+    }
+
+    // Nodes jittered on a 40 px lattice, each linked to random nodes at most two lattice steps away
+    static CompactGraph layoutGraph(int nodes, int edgesPerNode, long seed) {
+        Random random = new Random(seed);
+        int side = (int) Math.ceil(Math.sqrt(nodes));
+        CompactGraph graph = new CompactGraph();
+        for (int i = 0; i < nodes; i++) {
+            graph.addNode("n" + i, 20 + 40 * (i % side) + random.nextInt(21) - 10, 20 + 40 * (i / side) + random.nextInt(21) - 10);
+        }
+        for (int i = 0; i < nodes; i++) {
+            for (int k = 0; k < edgesPerNode; k++) {
+                int row = Math.min(side - 1, Math.max(0, i / side + random.nextInt(5) - 2));
+                int col = Math.min(side - 1, Math.max(0, i % side + random.nextInt(5) - 2));
+                int j = Math.min(nodes - 1, row * side + col);
+                if (j != i) graph.addEdge(i, j, 1 + random.nextInt(1000), 1 + random.nextInt(100));
+            }
+        }
+        return graph;
+    }
+
+    // Full-viewport and single-edge redraw times of TopologyRenderer vs drawing every edge of the
+    // map-based graph in both directions (the original paintComponent)
+    static void benchmarkRender(int nodes, int edgesPerNode) {
+        CompactGraph compact = layoutGraph(nodes, edgesPerNode, 31);
+        Rectangle viewport = new Rectangle(0, 0, 1600, 1200);
+        TopologyRenderer renderer = new TopologyRenderer(compact, null, Color.WHITE);
+        long start = System.nanoTime();
+        renderer.sync();
+        double syncMillis = millisSince(start);
+        renderer.setViewport(viewport);
+        BufferedImage[] tile = new BufferedImage[1];
+        renderer.renderDirty(tile);   // Warm-up (font and glyph caches)
+        renderer.invalidateAll();
+        start = System.nanoTime();
+        renderer.renderDirty(tile);
+        double fullMillis = millisSince(start);
+
+        compact.addEdge(0, 1 + (int) Math.sqrt(nodes), 5, 50);   // Diagonal neighbour of n0, inside the viewport
+        start = System.nanoTime();
+        renderer.sync();
+        Rectangle region = renderer.renderDirty(tile);
+        double dirtyMillis = millisSince(start);
+
+        Graph maps = toMapGraph(compact);
+        BufferedImage image = new BufferedImage(viewport.width, viewport.height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        double naiveMillis = 0;
+        for (int round = 0; round < 2; round++) {   // Second round is timed
+            start = System.nanoTime();
+            Map<String, Point> points = maps.getNodes();
+            for (Edge edge : maps.getAllEdges()) {
+                Point p1 = points.get(edge.from), p2 = points.get(edge.to);
+                g.drawLine(p1.x, p1.y, p2.x, p2.y);
+                g.drawString("C:" + edge.cost + " B:" + edge.bandwidth, (p1.x + p2.x) / 2, (p1.y + p2.y) / 2);
+            }
+            for (Map.Entry<String, Point> entry : points.entrySet()) {
+                g.fillOval(entry.getValue().x - 10, entry.getValue().y - 10, 20, 20);
+                g.drawString(entry.getKey(), entry.getValue().x - 5, entry.getValue().y + 5);
+            }
+            naiveMillis = millisSince(start);
+        }
+        g.dispose();
+
+        System.out.printf("nodes=%d edges=%d viewport=%dx%d%n", compact.nodeCount(), compact.edgeCount(), viewport.width, viewport.height);
+        System.out.printf("original paint: %.0fms per frame%n", naiveMillis);
+        System.out.printf("renderer: snapshot=%.0fms full viewport=%.1fms one-edge redraw=%.2fms (%dx%d dirty)%n",
+                syncMillis, fullMillis, dirtyMillis, region.width, region.height);
+    }
+
+    // Nearest / radius queries through SpatialIndex vs a linear scan, then connectKNearest
+    static void benchmarkSpatial(int nodes, int queries, int k) {
+        Random random = new Random(41);
+        CompactGraph compact = new CompactGraph();   // Nodes only, on a 100000 x 100000 map
+        for (int i = 0; i < nodes; i++) compact.addNode("n" + i, random.nextInt(100_000), random.nextInt(100_000));
+        SpatialIndex index = compact.spatialIndex();
+        int[][] points = new int[queries][];
+        for (int q = 0; q < queries; q++) points[q] = new int[]{random.nextInt(100_000), random.nextInt(100_000)};
+
+        long start = System.nanoTime();
+        int[] scanned = new int[queries];
+        for (int q = 0; q < queries; q++) {
+            double best = Double.POSITIVE_INFINITY;
+            for (int v = 0; v < nodes; v++) {
+                double d = Math.hypot(compact.x(v) - points[q][0], compact.y(v) - points[q][1]);
+                if (d < best) {
+                    best = d;
+                    scanned[q] = v;
+                }
+            }
+        }
+        double scanMillis = millisSince(start);
+
+        start = System.nanoTime();
+        int mismatches = 0;
+        for (int q = 0; q < queries; q++) {
+            int v = index.nearest(points[q][0], points[q][1], Double.POSITIVE_INFINITY, -1);
+            int w = scanned[q];
+            if (Math.hypot(compact.x(v) - points[q][0], compact.y(v) - points[q][1])
+                    != Math.hypot(compact.x(w) - points[q][0], compact.y(w) - points[q][1])) mismatches++;
+        }
+        double indexMillis = millisSince(start);
+
+        start = System.nanoTime();
+        long found = 0;
+        for (int[] p : points) {
+            int[] count = new int[1];
+            index.withinRadius(p[0], p[1], 1000, id -> count[0]++);
+            found += count[0];
+        }
+        double radiusMillis = millisSince(start);
+
+        Graph graph = toMapGraph(compact);
+        start = System.nanoTime();
+        int added = graph.connectKNearest(k, 10);
+        double connectMillis = millisSince(start);
+
+        System.out.printf("nodes=%d queries=%d%n", nodes, queries);
+        System.out.printf("nearest: scan %.3f ms/query, index %.2f us/query, mismatches=%d%n",
+                scanMillis / queries, 1000 * indexMillis / queries, mismatches);
+        System.out.printf("radius 1000: %.2f us/query, avg %.1f nodes%n", 1000 * radiusMillis / queries, (double) found / queries);
+        System.out.printf("connectKNearest k=%d: %d edges in %.0fms%n", k, added, connectMillis);
+    }
+
+    // Export a random graph as text, import it, write a snapshot and reopen it; totals must agree
+    static void benchmarkIo(int nodes, int edgesPerNode) throws IOException {
+        CompactGraph source = randomGraph(nodes, edgesPerNode, 43);
+        Path dir = Files.createTempDirectory("topology-io");
+        Path text = dir.resolve("topology.csv"), snapshot = dir.resolve("topology.ntgs");
+        try {
+            TopologyFiles.exportEdgeList(source, text);
+            long start = System.nanoTime();
+            Graph imported = new Graph();
+            int records = imported.importFile(text);
+            double importMillis = millisSince(start);
+
+            start = System.nanoTime();
+            imported.writeSnapshot(snapshot);
+            double writeMillis = millisSince(start);
+            start = System.nanoTime();
+            Graph reopened = Graph.openSnapshot(snapshot);
+            double openMillis = millisSince(start);
+
+            NetworkResult expected = source.primMST();
+            System.out.printf("nodes=%d edges=%d text=%dMB snapshot=%dMB%n", source.nodeCount(), source.edgeCount(),
+                    Files.size(text) >> 20, Files.size(snapshot) >> 20);
+            System.out.printf("import: %d records in %.0fms; snapshot write %.0fms, open %.0fms%n",
+                    records, importMillis, writeMillis, openMillis);
+            System.out.printf("MST matches: imported=%b reopened=%b%n", imported.primMST().toString().equals(expected.toString()),
+                    reopened.primMST().toString().equals(expected.toString()));
+        } finally {
+            Files.deleteIfExists(text);
+            Files.deleteIfExists(snapshot);
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    // Shortest-path queries on random pairs: map-based dijkstra vs the indexed-heap engine
+    static void benchmarkDijkstra(int nodes, int edgesPerNode, int queries) {
+        CompactGraph compact = randomGraph(nodes, edgesPerNode, 7);
+        Graph maps = toMapGraph(compact);
+        Random random = new Random(11);
+        int[][] pairs = new int[queries][2];
+        for (int[] pair : pairs) {
+            pair[0] = random.nextInt(nodes);
+            pair[1] = random.nextInt(nodes);
+        }
+        compact.dijkstra("n0", "n1");   // Build the CSR view and engine outside the timing
+
+        long start = System.nanoTime();
+        long mapsCost = 0;
+        for (int[] pair : pairs) mapsCost += maps.dijkstraOnMaps("n" + pair[0], "n" + pair[1]).totalCost;
+        double mapsMillis = millisSince(start);
+
+        start = System.nanoTime();
+        long engineCost = 0, hops = 0;
+        for (int[] pair : pairs) {
+            NetworkResult result = compact.dijkstra("n" + pair[0], "n" + pair[1]);
+            engineCost += result.totalCost;
+            hops += result.path == null ? 0 : result.path.size() - 1;
+        }
+        double engineMillis = millisSince(start);
+
+        System.out.printf("nodes=%d edges=%d queries=%d%n", compact.nodeCount(), compact.edgeCount(), queries);
+        System.out.printf("maps   dijkstra: %.2f ms/query, summed cost=%d%n", mapsMillis / queries, mapsCost);
+        System.out.printf("engine dijkstra: %.2f ms/query, summed cost=%d, avg hops=%.1f (speedup %.1fx)%n",
+                engineMillis / queries, engineCost, (double) hops / queries, mapsMillis / engineMillis);
+    }
+
+    private static void runAlgorithms(String label, Supplier<NetworkResult> mst, Supplier<NetworkResult> path) {
+        long start = System.nanoTime();
+        NetworkResult tree = mst.get();
+        double mstMillis = millisSince(start);
+        start = System.nanoTime();
+        NetworkResult shortest = path.get();
+        double pathMillis = millisSince(start);
+        System.out.printf("%s primMST=%.0fms (%s) dijkstra=%.0fms (%s)%n", label, mstMillis, tree, pathMillis, shortest);
+    }
+
+    static double millisSince(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1e6;
+    }
+}
+
+// GUI class for network topology visualization and interaction
+class NetworkTopologyGUI extends JFrame {
+    private Graph graph = new Graph();  // Graph instance
+    private JTextArea outputArea = new JTextArea(10, 40);   // Output text area
+    private DrawPanel drawPanel = new DrawPanel();  // Panel for drawing network
+
+    private String selectedNode = null;
+
+    NetworkTopologyGUI() {
+        setTitle("Network Topology Optimizer");
+        setSize(800, 600);
+        setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        setLayout(new BorderLayout());
+        graph.enableDynamicMST();   // Keep the MST current as edges are added
+
+        JPanel buttonPanel = new JPanel();
+        JButton addNodeBtn = new JButton("Add Node");
+        JButton addEdgeBtn = new JButton("Add Edge");
+        JButton findMSTBtn = new JButton("Find MST");
+        JButton shortestPathBtn = new JButton("Find Shortest Path");
+        JButton tradeOffBtn = new JButton("Cost/Latency Trade-offs");
+        JButton connectNearestBtn = new JButton("Connect k Nearest");
+        JButton importBtn = new JButton("Import...");
+
+        buttonPanel.add(addNodeBtn);
+        buttonPanel.add(addEdgeBtn);
+        buttonPanel.add(findMSTBtn);
+        buttonPanel.add(shortestPathBtn);
+        buttonPanel.add(tradeOffBtn);
+        buttonPanel.add(connectNearestBtn);
+        buttonPanel.add(importBtn);
+
+        add(buttonPanel, BorderLayout.NORTH);
+        add(new JScrollPane(outputArea), BorderLayout.SOUTH);
+        add(drawPanel, BorderLayout.CENTER);
+
+        // Button for adding nodes
+        addNodeBtn.addActionListener(e -> {
+            String name = JOptionPane.showInputDialog("Enter node name:");
+            int x = Integer.parseInt(JOptionPane.showInputDialog("Enter X position:"));
+            int y = Integer.parseInt(JOptionPane.showInputDialog("Enter Y position:"));
+
+            boolean moved = graph.hasNode(name);
+            graph.addNode(name, x, y);
+            drawPanel.graphChanged(moved);
+        });
+
+        // Button for adding edges
+        addEdgeBtn.addActionListener(e -> {
+            String from = JOptionPane.showInputDialog("Enter starting node:");
+            String to = JOptionPane.showInputDialog("Enter destination node:");
+            int cost = Integer.parseInt(JOptionPane.showInputDialog("Enter cost:"));
+            int bandwidth = Integer.parseInt(JOptionPane.showInputDialog("Enter bandwidth:"));
+
+            graph.addEdge(from, to, cost, bandwidth);
+            drawPanel.graphChanged(false);
+            outputArea.append("Added edge: " + from + " - " + to + " (Cost: " + cost + ", Bandwidth: " + bandwidth + ")\n");
+        });
+
+        // Button for finding MST
+        findMSTBtn.addActionListener(e -> {
+            SpanningForest forest = graph.spanningForest();
+            outputArea.append("Minimum Spanning Tree (MST) - " + forest.toResult().toString() + "\n");
+            if (forest.componentCount() > 1) {
+                outputArea.append("  Graph is disconnected: " + forest.componentCount() + " components\n");
+                for (int c = 0; c < forest.componentCount(); c++) {
+                    outputArea.append("  Component " + (c + 1) + " - Cost: " + forest.componentCost[c]
+                            + ", Latency: " + forest.componentLatency[c] + "\n");
+                }
+            }
+            for (int edge : forest.edges) {
+                outputArea.append("  " + graph.getCore().edgeName(edge) + "\n");
+            }
+        });
+
+        // Button for finding shortest path
+        shortestPathBtn.addActionListener(e -> {
+            String start = JOptionPane.showInputDialog("Enter start node:");
+            String end = JOptionPane.showInputDialog("Enter destination node:");
+            NetworkResult result = graph.dijkstra(start, end);
+            outputArea.append("Shortest Path from " + start + " to " + end + " - " + result.toString() + "\n");
+        });
+
+        // Button for listing every path not beaten on both cost and latency
+        tradeOffBtn.addActionListener(e -> {
+            String start = JOptionPane.showInputDialog("Enter start node:");
+            String end = JOptionPane.showInputDialog("Enter destination node:");
+            ParetoFrontier frontier;
+            try {
+                frontier = graph.paretoPaths(start, end, ParetoSearch.DEFAULT_LABELS_PER_NODE);
+            } catch (IllegalArgumentException ex) {
+                outputArea.append("Trade-offs unavailable: " + ex.getMessage() + "\n");
+                return;
+            }
+            if (frontier.routes.isEmpty()) {
+                outputArea.append("No path from " + start + " to " + end + "\n");
+                return;
+            }
+            outputArea.append("Cost/latency trade-offs from " + start + " to " + end + ":\n");
+            for (ParetoFrontier.Route route : frontier.routes) outputArea.append("  " + route + "\n");
+            if (frontier.truncated) {
+                outputArea.append("  (search limited to " + ParetoSearch.DEFAULT_LABELS_PER_NODE
+                        + " labels per node; some trade-offs may be missing)\n");
+            }
+        });
+
+        // Button for linking every node to its nearest neighbours (cost = distance)
+        connectNearestBtn.addActionListener(e -> {
+            int k = Integer.parseInt(JOptionPane.showInputDialog("Enter k:"));
+            int bandwidth = Integer.parseInt(JOptionPane.showInputDialog("Enter bandwidth:"));
+            int added = graph.connectKNearest(k, bandwidth);
+            drawPanel.graphChanged(false);
+            outputArea.append("Connected each node to its " + k + " nearest: " + added + " edges added\n");
+        });
+
+        // Button for loading nodes and edges from a text file
+        importBtn.addActionListener(e -> {
+            JFileChooser chooser = new JFileChooser();
+            if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) return;
+            try {
+                int records = graph.importFile(chooser.getSelectedFile().toPath());
+                outputArea.append("Imported " + records + " records from " + chooser.getSelectedFile() + "\n");
+            } catch (IOException ex) {
+                outputArea.append("Import failed: " + ex.getMessage() + "\n");
+            }
+            drawPanel.graphChanged(true);
+        });
+
+        // Mouse listener to select a node for interaction
+        drawPanel.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                selectedNode = graph.nearestNode(e.getX(), e.getY(), 20);
+            }
+        });
+
+        setVisible(true);
+    }
+
+    // Panel to draw the network topology; drawing happens in TopologyRenderer off the EDT
+    class DrawPanel extends JPanel {
+        private final TopologyRenderer renderer = new TopologyRenderer(graph.getCore(), this, getBackground());
+
+        // Call after every mutation; a moved node invalidates the whole picture
+        void graphChanged(boolean nodeMoved) {
+            if (nodeMoved) renderer.reload();
+            else renderer.sync();
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            super.paintComponent(g);
+            renderer.paint(g, getWidth(), getHeight());
+        }
+    }
+
+    // Main function to run the GUI
+    // Run with "bench-core [nodes] [edgesPerNode] [legacyNodes]" for the headless scale benchmark.
+    // Run with "bench-dijkstra [nodes] [edgesPerNode] [queries]" to compare shortest-path engines.
+    // Run with "bench-boruvka [nodes] [edgesPerNode]" for the parallel MST scaling benchmark.
+    // Run with "bench-pareto [nodes] [edgesPerNode] [queries]" to time cost/latency frontier queries.
+    // Run with "bench-matrix [nodes] [edgesPerNode] [size] [file]" to build a many-to-many distance matrix.
+    // Run with "bench-cache [nodes] [edgesPerNode] [queries] [pairs]" to measure the shortest-path cache.
+    // Run with "bench-dynamic [nodes] [edgesPerNode] [inserts]" to time incremental MST maintenance.
+    // Run with "bench-render [nodes] [edgesPerNode]" to time cached rendering (headless).
+    // Run with "bench-spatial [nodes] [queries] [k]" to compare spatial-index queries with linear scans.
+    // Run with "bench-io [nodes] [edgesPerNode]" to time text import and binary snapshots.
+    // Run with "batch <topology.csv|.ntgs> <queries|-> [threads]" to answer queries headless.
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length > 0 && args[0].equals("batch")) {
+            TopologyBatch.main(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("bench-dijkstra")) {
+            TopologyBenchmark.benchmarkDijkstra(args.length > 1 ? Integer.parseInt(args[1]) : 200_000,
+                    args.length > 2 ? Integer.parseInt(args[2]) : 4,
+                    args.length > 3 ? Integer.parseInt(args[3]) : 200);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("bench-io")) {
+            TopologyBenchmark.benchmarkIo(args.length > 1 ? Integer.parseInt(args[1]) : 250_000,
+                    args.length > 2 ? Integer.parseInt(args[2]) : 4);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("bench-spatial")) {
+            TopologyBenchmark.benchmarkSpatial(args.length > 1 ? Integer.parseInt(args[1]) : 200_000,
+                    args.length > 2 ? Integer.parseInt(args[2]) : 1000,
+                    args.length > 3 ? Integer.parseInt(args[3]) : 3);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("bench-render")) {
+            TopologyBenchmark.benchmarkRender(args.length > 1 ? Integer.parseInt(args[1]) : 25_000,
+                    args.length > 2 ? Integer.parseInt(args[2]) : 4);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("bench-dynamic")) {
+            TopologyBenchmark.benchmarkDynamic(args.length > 1 ? Integer.parseInt(args[1]) : 200_000,
+                    args.length > 2 ? Integer.parseInt(args[2]) : 4,
+                    args.length > 3 ? Integer.parseInt(args[3]) : 200_000);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("bench-cache")) {
+            TopologyBenchmark.benchmarkCache(args.length > 1 ? Integer.parseInt(args[1]) : 50_000,
+                    args.length > 2 ? Integer.parseInt(args[2]) : 4,
+                    args.length > 3 ? Integer.parseInt(args[3]) : 1_000_000,
+                    args.length > 4 ? Integer.parseInt(args[4]) : 200);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("bench-matrix")) {
+            TopologyBenchmark.benchmarkMatrix(args.length > 1 ? Integer.parseInt(args[1]) : 100_000,
+                    args.length > 2 ? Integer.parseInt(args[2]) : 4,
+                    args.length > 3 ? Integer.parseInt(args[3]) : 1000,
+                    args.length > 4 ? Paths.get(args[4]) : null);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("bench-pareto")) {
+            TopologyBenchmark.benchmarkPareto(args.length > 1 ? Integer.parseInt(args[1]) : 20_000,
+                    args.length > 2 ? Integer.parseInt(args[2]) : 3,
+                    args.length > 3 ? Integer.parseInt(args[3]) : 1000);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("bench-boruvka")) {
+            TopologyBenchmark.benchmarkBoruvka(args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000,
+                    args.length > 2 ? Integer.parseInt(args[2]) : 4);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("bench-core")) {
+            TopologyBenchmark.benchmarkCore(args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000,
+                    args.length > 2 ? Integer.parseInt(args[2]) : 4,
+                    args.length > 3 ? Integer.parseInt(args[3]) : 100_000);
+            return;
+        }
         SwingUtilities.invokeLater(NetworkTopologyGUI::new);
     }
 }
@@ -1,109 +1,2510 @@
 // Algorithm:
 // 1. Initialize WebCrawler:
 //    - Create an instance of WebCrawler with numThreads and maxDepth.
-//    - Set up thread pool with numThreads and initialize urlQueue and visitedUrls.
+//    - Set up thread pool with numThreads and initialize the URL frontier and visitedUrls.
 // 2. Start Crawling:
-//    - Add the starting URL to the urlQueue and mark it as visited.
+//    - Add the starting URL to the frontier at depth 0 and mark it as visited.
 //    - Start multiple worker threads to process the crawling task.
 // 3. Worker Thread Execution (CrawlerTask):
-//    - Each thread continuously retrieves URLs from the queue and calls the crawl(url, depth) method.
+//    - Each thread continuously retrieves entries from the frontier and calls crawl(url, depth).
+//    - An idle worker waits instead of exiting while other fetches are still running, because
+//      they may add new links. The crawl is finished (quiescent) only when the frontier and the
+//      scheduler buffers are empty and no fetch is in progress.
 // 4. Crawl a Web Page:
 //    - For each URL, attempt to connect and fetch content using HttpURLConnection.
 //    - If the response code is 200, proceed to extract links.
 // 5. Extract Links:
-//    - Simulate extracting links by generating new URLs.
-//    - If a link has not been visited, add it to the queue.
+//    - Stream the response body through LinkExtractor, a byte-level tag scanner that pulls out
+//      href/src attribute values without building a page String or DOM.
+//    - Resolve each value against the page URL (or <base href>) and normalize it.
+//    - If a link has not been visited and is within maxDepth, add it to the frontier at depth + 1.
 // 6. Shutdown and Await Termination:
 //    - After submitting crawling tasks, shut down the executor service.
 //    - Await thread termination with a timeout, forcefully shut down if not finished.
+// 7. Async Fetch Mode (FetchMode.ASYNC):
+//    - A single dispatcher polls the queue and hands each URL to java.net.http.HttpClient.sendAsync().
+//    - A Semaphore caps the number of requests in flight (maxInFlight), so thousands of fetches
+//      can wait on the network at once without holding a pool thread each.
+//    - Responses complete on the thread pool, which only runs link extraction.
+//    - The dispatcher stops once the crawl is quiescent (see step 3).
+// 8. URL Frontier (UrlFrontier):
+//    - Entries carry (url, depth, priority); lower priority values are crawled first.
+//    - One priority queue per host; hosts are served round-robin so no single site dominates.
+//    - At most maxInMemory entries stay on the heap. Overflow is appended to a spill file and
+//      read back in FIFO order once the in-memory part drains below half.
+// 9. Visited Set (VisitedSet):
+//    - Pluggable dedup layer. HashVisitedSet keeps full URL Strings (exact, heavy).
+//    - CompactVisitedSet hashes each URL to a 64-bit fingerprint and splits the key space into
+//      lock stripes. Each stripe has a Bloom filter sized from the false-positive budget and an
+//      open-addressing long[] of fingerprints, so a URL costs ~10 bytes instead of ~100+.
+//    - A Bloom miss proves the URL is new; a Bloom hit is confirmed against the fingerprint table.
+//      With exact = false the fingerprint table is skipped and the budget bounds wrongly skipped URLs.
+// 10. Politeness (HostScheduler):
+//    - Sits between the frontier and crawl(). Each host has a token bucket (requests/sec + burst)
+//      and a cap on concurrent fetches.
+//    - Each host may hold only a small share of the scheduler buffer; the rest of its entries stay
+//      in the frontier, so one heavily linked, throttled host cannot block the others.
+//    - Hosts with buffered work wait in a queue ordered by the time their next token is due;
+//      workers block on a Condition until the head host is ready, so nobody spins.
+//    - Per-host fetch counts, throughput and politeness wait times are reported by getHostStats().
+// 11. Checkpoint and Resume (CheckpointLog):
+//    - The log records deltas, never the whole frontier. Each checkpoint holds the entries
+//      added to the frontier since the previous one and the URLs completed since then.
+//    - Every checkpointInterval the crawler locks the scheduler and swaps out those two lists.
+//      The pause does not depend on frontier size, and spilled entries are never read back.
+//      Encoding and the FileChannel write happen afterwards. A failed write truncates the log back
+//      to the last group and merges the lists back for the next checkpoint.
+//    - The log is append-only: ADDED, COMPLETED and COMMIT records, each with a CRC32. Only
+//      groups that end in a valid COMMIT count; a torn tail is truncated on open.
+//    - On restart, visited = completed URLs + pending entries, where pending = added entries not yet
+//      completed (matched by 64-bit fingerprint). Finished pages are never fetched again.
+//    - Once completed entries make up most of the file, it is rewritten: COMPLETED records are
+//      kept and only still-pending ADDED entries, streamed record by record.
+// 12. Connection Reuse and Conditional GET (ValidatorCache):
+//    - Unparsed response bodies are read to the end (or discarded by HttpClient) so the keep-alive
+//      connection goes back to the per-host pool. Past 64 KB (images, archives, ...) the connection
+//      is dropped instead, since downloading the rest costs more than a new connection.
+//    - HttpURLConnection keeps at most 5 idle connections per host by default. With more
+//      BLOCKING threads than that, start the JVM with -Dhttp.maxConnections=<numThreads>.
+//      The JDK reads that property only once, so the crawler does not set it itself.
+//    - ETag/Last-Modified plus the page's outgoing links are kept in an LRU cache bounded by
+//      approximate bytes, optionally saved to a file between runs.
+//    - Cached pages are requested with If-None-Match/If-Modified-Since; a 304 re-queues the
+//      cached links without downloading or parsing the page.
+// 13. Metrics (CrawlMetrics):
+//    - Pages/sec, a log2-bucketed fetch latency histogram, queue depth, in-flight fetches,
+//      dedup hit rate and error counts by type (exception class or HTTP status class).
+//    - Printed as one line every metricsLogInterval and registered as a JMX MBean
+//      (WebCrawler:type=CrawlMetrics,name=crawler-N) for jconsole/VisualVM.
 
+import com.sun.net.httpserver.HttpServer;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
 import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 // WebCrawler class that manages multithreaded crawling
 public class WebCrawler {
-    private final Set<String> visitedUrls = ConcurrentHashMap.newKeySet(); // Store visited URLs to avoid duplicates
-    private final ConcurrentLinkedQueue<String> urlQueue = new ConcurrentLinkedQueue<>(); // Queue for URLs to be crawled
+    private VisitedSet visitedUrls = new CompactVisitedSet(DEFAULT_EXPECTED_URLS, DEFAULT_BLOOM_FPP, true); // Store visited URLs to avoid duplicates
+    private final UrlFrontier frontier; // Depth-aware, per-host frontier of URLs to be crawled
+    private final HostScheduler scheduler; // Per-host rate limits between the frontier and crawl()
     private final ExecutorService executorService; // Thread pool for crawling tasks
+    private final int numThreads; // Number of worker threads
     private final int maxDepth; // Maximum depth to crawl
+    private final FetchMode fetchMode; // Blocking workers or async dispatcher
+    private final Semaphore inFlightLimit; // Caps concurrent async requests
+    private final int maxInFlight; // Permits in inFlightLimit
+    private final AtomicInteger inFlight = new AtomicInteger(); // Fetches started and not yet completed
+    private final CrawlMetrics metrics; // Counters exported by log line and JMX
+    private HttpClient httpClient; // Shared async client (ASYNC mode only)
+    private boolean logPages = true; // Print every crawled URL
+    private int crawlTimeoutSeconds = DEFAULT_CRAWL_TIMEOUT_SECONDS; // Hard stop for a crawl
+    private CheckpointLog checkpointLog; // Null when checkpointing is off
+    private long checkpointIntervalMillis;
+    private ScheduledExecutorService backgroundTimer; // Checkpoints and metrics log line
+    private int metricsLogSeconds = DEFAULT_METRICS_LOG_SECONDS; // 0 = no periodic log line
+    private volatile boolean stopped; // Set when the crawl timeout expires
+    private ValidatorCache validatorCache; // Null when conditional GETs are off
+    private Path validatorCacheFile; // Where the cache is loaded from and saved to (optional)
+
+    private static final int DEFAULT_CRAWL_TIMEOUT_SECONDS = 60; // Hard stop for a crawl
+    private static final int DEFAULT_METRICS_LOG_SECONDS = 10; // Period of the metrics log line
+    private static final AtomicInteger INSTANCES = new AtomicInteger(); // Names JMX beans
+    private static final int FETCH_TIMEOUT_MILLIS = 5000; // Connect/read timeout per request
+    private static final int MAX_DRAIN_BYTES = 64 * 1024; // Unparsed body read just to keep the connection
+    private static final int DEFAULT_FRONTIER_MEMORY = 100_000; // Frontier entries kept on the heap
+    private static final int DEFAULT_EXPECTED_URLS = 1_000_000; // Bloom filter sizing for the visited set
+    private static final double DEFAULT_BLOOM_FPP = 0.01; // Bloom filter false-positive budget
+    private static final double DEFAULT_HOST_RATE = 5.0; // Requests per second per host
+    private static final int DEFAULT_HOST_BURST = 5; // Token bucket capacity per host
+    private static final int DEFAULT_HOST_CONCURRENCY = 2; // Simultaneous fetches per host
+    private static final int SCHEDULER_BUFFER = 10_000; // Entries pulled ahead of the frontier
+    private static final int SCHEDULER_BUFFER_PER_HOST = 100; // Share of that buffer one host may hold
+    private static final long IDLE_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(10); // Max wait before rechecking for work
+
+    // How pages are fetched
+    public enum FetchMode {
+        BLOCKING, // One HttpURLConnection per worker thread
+        ASYNC     // Non-blocking HttpClient, bounded by maxInFlight
+    }
 
     // Constructor initializes the thread pool and max depth
     public WebCrawler(int numThreads, int maxDepth) {
+        this(numThreads, maxDepth, FetchMode.BLOCKING, numThreads);
+    }
+
+    // Constructor with an explicit fetch mode and in-flight request limit
+    public WebCrawler(int numThreads, int maxDepth, FetchMode fetchMode, int maxInFlight) {
+        if (numThreads < 1 || maxInFlight < 1) {
+            throw new IllegalArgumentException("numThreads and maxInFlight must be positive");
+        }
         this.executorService = Executors.newFixedThreadPool(numThreads); // Create thread pool
+        this.numThreads = numThreads;
         this.maxDepth = maxDepth;
+        this.fetchMode = fetchMode;
+        this.inFlightLimit = new Semaphore(maxInFlight);
+        this.maxInFlight = maxInFlight;
+        this.frontier = new UrlFrontier(DEFAULT_FRONTIER_MEMORY);
+        this.scheduler = new HostScheduler(frontier, SCHEDULER_BUFFER, SCHEDULER_BUFFER_PER_HOST);
+        scheduler.setPoliteness(DEFAULT_HOST_RATE, DEFAULT_HOST_BURST, DEFAULT_HOST_CONCURRENCY);
+        this.metrics = new CrawlMetrics(scheduler::queueDepth, inFlight::get);
+    }
+
+    // Enable or disable the per-page "Crawling: ..." line
+    public void setLogPages(boolean logPages) {
+        this.logPages = logPages;
+    }
+
+    // Limit how many frontier entries stay in memory before spilling to disk
+    public void setFrontierMemoryLimit(int maxInMemory) {
+        frontier.setMaxInMemory(maxInMemory);
+    }
+
+    // Replace the dedup layer (call before startCrawling)
+    public void setVisitedSet(VisitedSet visitedSet) {
+        this.visitedUrls = visitedSet;
+    }
+
+    // Per-host politeness: sustained requests/sec, burst size and concurrent fetches
+    public void setPoliteness(double requestsPerSecond, int burst, int maxConcurrentPerHost) {
+        scheduler.setPoliteness(requestsPerSecond, burst, maxConcurrentPerHost);
+    }
+
+    // Busiest hosts with throughput and politeness wait times
+    public String getHostStats(int topHosts) {
+        return scheduler.stats(topHosts);
+    }
+
+    // Stop the crawl after this many seconds (a final checkpoint is still written)
+    public void setCrawlTimeout(int seconds) {
+        this.crawlTimeoutSeconds = seconds;
+    }
+
+    // Write a checkpoint to logFile every intervalMillis; an existing log is resumed from
+    public void enableCheckpoints(Path logFile, long intervalMillis) {
+        this.checkpointLog = new CheckpointLog(logFile);
+        this.checkpointIntervalMillis = intervalMillis;
+        scheduler.setJournaling(true);
+    }
+
+    // Send conditional GETs using a validator cache of at most maxBytes. cacheFile (may be null)
+    // is loaded before the crawl and saved after it, so recrawls hit the cache.
+    public void enableConditionalGet(long maxBytes, Path cacheFile) {
+        this.validatorCache = new ValidatorCache(maxBytes);
+        this.validatorCacheFile = cacheFile;
+    }
+
+    // Conditional request counts, 304 hits and cache size
+    public String getCacheStats() {
+        return validatorCache == null ? "validator cache: disabled" : validatorCache.stats();
+    }
+
+    // Checkpoint count, pause and write times
+    public String getCheckpointStats() {
+        return checkpointLog == null ? "checkpoints: disabled" : checkpointLog.stats();
+    }
+
+    // Seconds between metrics log lines; 0 turns the line off
+    public void setMetricsLogInterval(int seconds) {
+        this.metricsLogSeconds = seconds;
+    }
+
+    // Live crawl metrics (also available over JMX while a crawl runs)
+    public CrawlMetrics getMetrics() {
+        return metrics;
+    }
+
+    // Frontier counters and enqueue/dequeue rates
+    public String getFrontierStats() {
+        return frontier.stats();
     }
 
     // Start the crawling process with an initial URL
     public void startCrawling(String startUrl) {
-        urlQueue.add(startUrl); // Add the initial URL to queue
-        visitedUrls.add(startUrl); // Mark it as visited
+        loadValidatorCache();
+        boolean resumed = resumeFromCheckpoint();
+        if (checkpointLog != null) frontier.setJournaling(true); // Resumed entries are already in the log
+        if (!resumed) {
+            frontier.add(startUrl, 0, 0); // Add the initial URL to the frontier at depth 0
+            visitedUrls.add(startUrl); // Mark it as visited
+        }
+        startBackgroundTasks();
+        ObjectName beanName = metrics.register("crawler-" + INSTANCES.incrementAndGet());
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(crawlTimeoutSeconds); // One limit for the whole crawl
 
-        for (int i = 0; i < 5; i++) { // Start multiple worker threads
-            executorService.execute(new CrawlerTask());
+        if (fetchMode == FetchMode.ASYNC) {
+            runAsyncDispatcher(deadline);
+        } else {
+            for (int i = 0; i < numThreads; i++) { // Start one worker per pool thread
+                executorService.execute(new CrawlerTask());
+            }
         }
 
         executorService.shutdown(); // Shutdown after tasks are submitted
         try {
-            if (!executorService.awaitTermination(60, TimeUnit.SECONDS)) {
+            if (!executorService.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                stopped = true; // Workers stop taking new URLs
                 executorService.shutdownNow();
             }
         } catch (InterruptedException e) {
+            stopped = true;
             executorService.shutdownNow();
+        } finally {
+            stopBackgroundTasks(); // Final checkpoint: a timed-out crawl can be resumed
+            metrics.unregister(beanName);
+            if (metricsLogSeconds > 0) System.out.println(metrics.logLine()); // Final totals
+            saveValidatorCache();
+            frontier.close(); // Drop the spill file, if any
+        }
+    }
+
+    private void loadValidatorCache() {
+        if (validatorCache == null || validatorCacheFile == null || !Files.exists(validatorCacheFile)) return;
+        try {
+            validatorCache.load(validatorCacheFile);
+        } catch (IOException e) {
+            System.err.println("Ignoring unreadable validator cache: " + e.getMessage());
+        }
+    }
+
+    private void saveValidatorCache() {
+        if (validatorCache == null || validatorCacheFile == null) return;
+        try {
+            validatorCache.save(validatorCacheFile);
+        } catch (IOException e) {
+            System.err.println("Failed to save validator cache: " + e.getMessage());
+        }
+    }
+
+    // Load the last committed checkpoint, if any. Returns true when the crawl was resumed.
+    private boolean resumeFromCheckpoint() {
+        if (checkpointLog == null) return false;
+        try {
+            long start = System.nanoTime();
+            CheckpointLog.State state = checkpointLog.open();
+            if (state.checkpoints == 0) return false;
+            for (String url : state.completed) visitedUrls.add(url);
+            for (FrontierEntry entry : state.pending) {
+                visitedUrls.add(entry.url);
+                frontier.add(entry.url, entry.depth, entry.priority);
+            }
+            System.out.printf("Resumed from checkpoint %d: %d pages done, %d pending (%.0f ms)%n",
+                    state.checkpoints, state.completed.size(), state.pending.size(), (System.nanoTime() - start) / 1e6);
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read checkpoint log", e);
+        }
+    }
+
+    private void startBackgroundTasks() {
+        backgroundTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "crawler-background");
+            t.setDaemon(true);
+            return t;
+        });
+        if (checkpointLog != null) {
+            backgroundTimer.scheduleWithFixedDelay(this::checkpoint,
+                    checkpointIntervalMillis, checkpointIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+        if (metricsLogSeconds > 0) {
+            backgroundTimer.scheduleAtFixedRate(() -> System.out.println(metrics.logLine()),
+                    metricsLogSeconds, metricsLogSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    private void stopBackgroundTasks() {
+        backgroundTimer.shutdownNow();
+        try {
+            backgroundTimer.awaitTermination(FETCH_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (checkpointLog == null) return;
+        checkpoint();
+        checkpointLog.close();
+    }
+
+    // Take the deltas under the scheduler lock, then write them outside the lock
+    private synchronized void checkpoint() {
+        long start = System.nanoTime();
+        HostScheduler.Snapshot snapshot = scheduler.snapshot();
+        long pause = System.nanoTime() - start;
+        try {
+            checkpointLog.append(snapshot.completed, snapshot.added, pause);
+        } catch (IOException | RuntimeException e) {
+            scheduler.restore(snapshot); // Retried with the next checkpoint
+            System.err.println("Checkpoint failed: " + e.getMessage());
+            return;
         }
+        checkpointLog.compactIfNeeded(); // The deltas are on disk now; a failed compaction must not resend them
     }
 
     // Worker task that crawls web pages
     private class CrawlerTask implements Runnable {
         @Override
         public void run() {
-            while (!urlQueue.isEmpty()) {
-                String url = urlQueue.poll(); // Get next URL
-                if (url != null) {
-                    crawl(url, 0); // Start crawling at depth 0
+            try {
+                while (!stopped) {
+                    HostScheduler.Lease lease = scheduler.take(IDLE_WAIT_NANOS); // Next URL whose host may be fetched
+                    if (lease == null) {
+                        if (scheduler.isQuiescent()) break; // No queued work and no fetch that could add some
+                        continue; // take() already waited for a throttled host or a running fetch
+                    }
+                    inFlight.incrementAndGet();
+                    try {
+                        crawl(lease.entry.url, lease.entry.depth); // Crawl at the depth it was discovered
+                    } finally {
+                        inFlight.decrementAndGet();
+                        // An interrupted fetch (crawl timeout) stays pending for the next run
+                        scheduler.release(lease, !Thread.currentThread().isInterrupted());
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt(); // shutdownNow() after the crawl timeout
+            }
+        }
+    }
+
+    // Async mode: hand URLs to HttpClient until the queue drains and nothing is in flight.
+    // Returns once every response has completed, or at the crawl deadline.
+    private void runAsyncDispatcher(long deadline) {
+        httpClient = HttpClient.newBuilder()
+                .executor(executorService) // Completions (link extraction) run on the pool
+                .connectTimeout(Duration.ofMillis(FETCH_TIMEOUT_MILLIS))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+
+        try {
+            while (true) {
+                if (System.nanoTime() >= deadline) {
+                    stopped = true;
+                    break;
                 }
+                HostScheduler.Lease lease = scheduler.take(IDLE_WAIT_NANOS);
+                if (lease == null) {
+                    if (scheduler.isQuiescent()) break; // Nothing queued and nothing in flight
+                    continue; // take() already waited for a throttled host or a completion
+                }
+                if (!inFlightLimit.tryAcquire(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                    scheduler.release(lease, false); // Not fetched: stays pending for a resumed crawl
+                    stopped = true;
+                    break;
+                }
+                inFlight.incrementAndGet();
+                crawlAsync(lease);
             }
+            // The pool runs the completions, so keep it alive until all permits are back
+            if (inFlightLimit.tryAcquire(maxInFlight, Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                inFlightLimit.release(maxInFlight);
+            } else {
+                stopped = true;
+            }
+        } catch (InterruptedException e) {
+            stopped = true;
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Issue a non-blocking GET; the permit is released when the response or error arrives
+    private void crawlAsync(HostScheduler.Lease lease) {
+        String url = lease.entry.url;
+        int depth = lease.entry.depth;
+        if (depth > maxDepth) {
+            completeAsync(lease);
+            return;
+        }
+
+        CachedPage cached = validatorCache == null ? null : validatorCache.get(url);
+        HttpRequest request;
+        try {
+            HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url))
+                    .timeout(Duration.ofMillis(FETCH_TIMEOUT_MILLIS))
+                    .GET();
+            if (cached != null && cached.etag != null) builder.header("If-None-Match", cached.etag);
+            if (cached != null && cached.lastModified != null) builder.header("If-Modified-Since", cached.lastModified);
+            request = builder.build();
+        } catch (IllegalArgumentException e) {
+            metrics.recordError(e.getClass().getSimpleName());
+            System.err.println("Failed to fetch: " + url + " | Error: " + e.getMessage());
+            completeAsync(lease);
+            return;
         }
+
+        if (logPages) System.out.println("Crawling: " + url);
+        long start = System.nanoTime();
+        // Parse the body as it arrives; the future completes only after the last chunk was scanned
+        List<String> found = validatorCache == null ? null : new ArrayList<>();
+        HttpResponse.BodyHandler<Void> handler = info -> wantsLinks(info.statusCode(), depth,
+                info.headers().firstValue("Content-Type").orElse(null))
+                ? HttpResponse.BodySubscribers.fromSubscriber(new LinkSubscriber(newExtractor(url, depth, found)))
+                : new CappedDiscard();
+        httpClient.sendAsync(request, handler)
+                .whenComplete((response, error) -> {
+                    try {
+                        if (error != null) {
+                            Throwable cause = error instanceof CompletionException && error.getCause() != null
+                                    ? error.getCause() : error;
+                            metrics.recordError(cause.getClass().getSimpleName());
+                            System.err.println("Failed to fetch: " + url + " | Error: " + error.getMessage());
+                            return;
+                        }
+                        metrics.recordFetch(System.nanoTime() - start, response.statusCode());
+                        if (response.statusCode() == 304 && cached != null) {
+                            reuseCachedLinks(cached, depth); // Unchanged: reuse its links
+                        } else if (found != null && wantsLinks(response.statusCode(), depth,
+                                response.headers().firstValue("Content-Type").orElse(null))) {
+                            validatorCache.put(url, response.headers().firstValue("ETag").orElse(null),
+                                    response.headers().firstValue("Last-Modified").orElse(null), found);
+                        }
+                    } finally {
+                        completeAsync(lease); // Links are queued before the request stops counting as in flight
+                    }
+                });
+    }
+
+    // Release an async slot; the scheduler wakes the dispatcher
+    private void completeAsync(HostScheduler.Lease lease) {
+        inFlight.decrementAndGet();
+        inFlightLimit.release();
+        scheduler.release(lease, true);
     }
 
     // Method to crawl a single web page
     private void crawl(String url, int depth) {
         if (depth > maxDepth) return; // Stop crawling if max depth is reached
 
+        long start = System.nanoTime();
         try {
-            System.out.println("Crawling: " + url);
+            if (logPages) System.out.println("Crawling: " + url);
             HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
             connection.setRequestMethod("GET");
-            connection.setConnectTimeout(5000); // Set timeout to 5 seconds
-            connection.setReadTimeout(5000);
+            connection.setConnectTimeout(FETCH_TIMEOUT_MILLIS); // Set timeout to 5 seconds
+            connection.setReadTimeout(FETCH_TIMEOUT_MILLIS);
+            CachedPage cached = validatorCache == null ? null : validatorCache.get(url);
+            if (cached != null && cached.etag != null) connection.setRequestProperty("If-None-Match", cached.etag);
+            if (cached != null && cached.lastModified != null) connection.setRequestProperty("If-Modified-Since", cached.lastModified);
 
             int responseCode = connection.getResponseCode();
-            if (responseCode == 200) { // If successful response
-                extractLinks(url, depth); // Simulated function to extract links
+            try (InputStream body = responseCode >= 400 ? connection.getErrorStream() : connection.getInputStream()) {
+                if (responseCode == 304 && cached != null) { // Unchanged: reuse its links, nothing to parse
+                    reuseCachedLinks(cached, depth);
+                } else if (body != null && wantsLinks(responseCode, depth, connection.getContentType())) { // If successful HTML response
+                    List<String> found = validatorCache == null ? null : new ArrayList<>();
+                    newExtractor(url, depth, found).extract(body); // Stream links straight into the frontier
+                    if (found != null) {
+                        validatorCache.put(url, connection.getHeaderField("ETag"),
+                                connection.getHeaderField("Last-Modified"), found);
+                    }
+                }
+                if (!drain(body)) connection.disconnect(); // Too much left: drop the connection instead
             }
+            metrics.recordFetch(System.nanoTime() - start, responseCode);
         } catch (IOException e) {
+            metrics.recordError(e.getClass().getSimpleName());
             System.err.println("Failed to fetch: " + url + " | Error: " + e.getMessage());
         }
     }
 
-    // Simulated function to extract links from a page (replace with real HTML parsing)
-    private void extractLinks(String pageUrl, int depth) {
-        Set<String> newUrls = new HashSet<>();
-        newUrls.add(pageUrl + "/next1"); // Simulating link extraction
-        newUrls.add(pageUrl + "/next2");
+    // A 304 stands in for the page: queue its cached links under the same depth rule as a parsed page
+    private void reuseCachedLinks(CachedPage cached, int depth) {
+        validatorCache.recordNotModified();
+        if (depth + 1 > maxDepth) return;
+        for (String link : cached.links) enqueueLink(link, depth);
+    }
+
+    // Read the rest of a body so the connection can be reused. Returns false once more than
+    // MAX_DRAIN_BYTES remain, when closing the connection is cheaper than downloading the rest.
+    private static boolean drain(InputStream body) throws IOException {
+        if (body == null) return true;
+        byte[] skip = new byte[4096];
+        for (long skipped = 0; skipped <= MAX_DRAIN_BYTES; ) {
+            int read = body.read(skip);
+            if (read < 0) return true;
+            skipped += read;
+        }
+        return false;
+    }
+
+    // Only successful HTML pages whose children are within maxDepth are parsed
+    private boolean wantsLinks(int statusCode, int depth, String contentType) {
+        return statusCode == 200 && depth + 1 <= maxDepth
+                && (contentType == null || contentType.toLowerCase(Locale.ROOT).contains("html"));
+    }
+
+    // Extractor that queues every new link found on a page at depth + 1; found (may be null)
+    // collects all of them for the validator cache
+    private LinkExtractor newExtractor(String pageUrl, int depth, List<String> found) {
+        return new LinkExtractor(pageUrl, newUrl -> {
+            if (found != null) found.add(newUrl);
+            enqueueLink(newUrl, depth);
+        });
+    }
+
+    private void enqueueLink(String newUrl, int parentDepth) {
+        boolean added = visitedUrls.add(newUrl);
+        metrics.recordLink(!added);
+        if (added) { // Avoid duplicates
+            frontier.add(newUrl, parentDepth + 1, parentDepth + 1); // Shallower pages first
+        }
+    }
+
+    // JMX view of CrawlMetrics (standard MBean: interface name = class name + "MBean")
+    public interface CrawlMetricsMBean {
+        long getPagesFetched();
+
+        double getPagesPerSecond();
+
+        long getQueueDepth();
+
+        long getInFlight();
+
+        double getDedupHitRate();
+
+        long getErrorCount();
+
+        Map<String, Long> getErrorsByType();
+
+        double getLatencyP50Millis();
+
+        double getLatencyP99Millis();
+
+        String getLatencyHistogram();
+    }
+
+    // Crawl counters shared by all workers
+    public static final class CrawlMetrics implements CrawlMetricsMBean {
+        private static final int BUCKETS = 24; // Bucket i holds latencies in [2^(i-1), 2^i) ms; bucket 0 is < 1ms
+
+        private final LongSupplier queueDepth;
+        private final LongSupplier inFlight;
+        private final long startNanos = System.nanoTime();
+        private final LongAdder pages = new LongAdder();
+        private final LongAdder links = new LongAdder();
+        private final LongAdder duplicateLinks = new LongAdder();
+        private final AtomicLongArray latency = new AtomicLongArray(BUCKETS);
+        private final ConcurrentHashMap<String, LongAdder> errors = new ConcurrentHashMap<>();
+        private long lastLogPages;
+        private long lastLogNanos = startNanos;
+
+        CrawlMetrics(LongSupplier queueDepth, LongSupplier inFlight) {
+            this.queueDepth = queueDepth;
+            this.inFlight = inFlight;
+        }
+
+        // A completed HTTP exchange; 4xx/5xx also count as errors
+        void recordFetch(long nanos, int statusCode) {
+            pages.increment();
+            long millis = nanos / 1_000_000;
+            int bucket = millis == 0 ? 0 : Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(millis));
+            latency.incrementAndGet(bucket);
+            if (statusCode >= 400) recordError("HTTP " + statusCode / 100 + "xx");
+        }
+
+        void recordError(String type) {
+            errors.computeIfAbsent(type, k -> new LongAdder()).increment();
+        }
+
+        void recordLink(boolean duplicate) {
+            links.increment();
+            if (duplicate) duplicateLinks.increment();
+        }
+
+        @Override
+        public long getPagesFetched() {
+            return pages.sum();
+        }
+
+        @Override
+        public double getPagesPerSecond() {
+            return pages.sum() / Math.max((System.nanoTime() - startNanos) / 1e9, 1e-9);
+        }
+
+        @Override
+        public long getQueueDepth() {
+            return queueDepth.getAsLong();
+        }
+
+        @Override
+        public long getInFlight() {
+            return inFlight.getAsLong();
+        }
+
+        @Override
+        public double getDedupHitRate() {
+            long total = links.sum();
+            return total == 0 ? 0 : (double) duplicateLinks.sum() / total;
+        }
+
+        @Override
+        public long getErrorCount() {
+            long total = 0;
+            for (LongAdder count : errors.values()) total += count.sum();
+            return total;
+        }
+
+        @Override
+        public Map<String, Long> getErrorsByType() {
+            Map<String, Long> result = new TreeMap<>();
+            errors.forEach((type, count) -> result.put(type, count.sum()));
+            return result;
+        }
+
+        @Override
+        public double getLatencyP50Millis() {
+            return percentileMillis(0.50);
+        }
+
+        @Override
+        public double getLatencyP99Millis() {
+            return percentileMillis(0.99);
+        }
+
+        // "<1ms:n <2ms:n <4ms:n ..." for non-empty buckets
+        @Override
+        public String getLatencyHistogram() {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < BUCKETS; i++) {
+                long count = latency.get(i);
+                if (count == 0) continue;
+                if (sb.length() > 0) sb.append(' ');
+                sb.append(i == BUCKETS - 1 ? ">=" + (1L << (i - 1)) : "<" + (1L << i)).append("ms:").append(count);
+            }
+            return sb.toString();
+        }
+
+        // Upper bound of the bucket containing the given quantile
+        private double percentileMillis(double quantile) {
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) total += latency.get(i);
+            if (total == 0) return 0;
+            long rank = (long) Math.ceil(quantile * total), seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += latency.get(i);
+                if (seen >= rank) return 1L << i;
+            }
+            return 1L << (BUCKETS - 1);
+        }
+
+        // One-line summary; the rate covers the time since the previous line
+        synchronized String logLine() {
+            long now = System.nanoTime();
+            long fetched = pages.sum();
+            double rate = (fetched - lastLogPages) / Math.max((now - lastLogNanos) / 1e9, 1e-9);
+            lastLogPages = fetched;
+            lastLogNanos = now;
+            return String.format("metrics: pages=%d rate=%.1f/s avg=%.1f/s queue=%d inFlight=%d dedupHit=%.1f%% "
+                            + "p50<=%.0fms p99<=%.0fms errors=%s",
+                    fetched, rate, getPagesPerSecond(), getQueueDepth(), getInFlight(), 100 * getDedupHitRate(),
+                    getLatencyP50Millis(), getLatencyP99Millis(), getErrorsByType());
+        }
+
+        // Register with the platform MBean server; returns null if JMX is unavailable
+        ObjectName register(String name) {
+            try {
+                MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                ObjectName objectName = new ObjectName("WebCrawler:type=CrawlMetrics,name=" + name);
+                server.registerMBean(this, objectName);
+                return objectName;
+            } catch (JMException | SecurityException e) {
+                System.err.println("Metrics MBean not registered: " + e.getMessage());
+                return null;
+            }
+        }
+
+        void unregister(ObjectName objectName) {
+            if (objectName == null) return;
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (JMException e) {
+                System.err.println("Metrics MBean not unregistered: " + e.getMessage());
+            }
+        }
+    }
+
+    // Validators and outgoing links of a fetched page
+    static final class CachedPage {
+        final String etag;
+        final String lastModified;
+        final String[] links;
+        final long bytes; // Approximate heap footprint
+
+        CachedPage(String etag, String lastModified, String[] links) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.links = links;
+            long size = 64 + 16L * links.length;
+            if (etag != null) size += 40 + 2L * etag.length();
+            if (lastModified != null) size += 40 + 2L * lastModified.length();
+            for (String link : links) size += 40 + 2L * link.length();
+            this.bytes = size;
+        }
+    }
+
+    // LRU cache of page validators, bounded by approximate bytes
+    static final class ValidatorCache {
+        private final long maxBytes;
+        private final LinkedHashMap<String, CachedPage> pages = new LinkedHashMap<>(1024, 0.75f, true);
+        private long bytes;
+        private long lookups, hits, notModified, evictions;
+
+        ValidatorCache(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        synchronized CachedPage get(String url) {
+            lookups++;
+            CachedPage page = pages.get(url);
+            if (page != null) hits++;
+            return page;
+        }
+
+        // Only pages with a validator are worth keeping
+        synchronized void put(String url, String etag, String lastModified, List<String> links) {
+            if (etag == null && lastModified == null) return;
+            CachedPage page = new CachedPage(etag, lastModified, links.toArray(new String[0]));
+            if (page.bytes > maxBytes) return;
+            CachedPage old = pages.put(url, page);
+            bytes += page.bytes + 2L * url.length() + 48 - (old == null ? 0 : old.bytes + 2L * url.length() + 48);
+            Iterator<Map.Entry<String, CachedPage>> eldest = pages.entrySet().iterator();
+            while (bytes > maxBytes && eldest.hasNext()) {
+                Map.Entry<String, CachedPage> entry = eldest.next();
+                bytes -= entry.getValue().bytes + 2L * entry.getKey().length() + 48;
+                eldest.remove();
+                evictions++;
+            }
+        }
+
+        synchronized void recordNotModified() {
+            notModified++;
+        }
+
+        synchronized String stats() {
+            return String.format("validator cache: entries=%d bytes=%d lookups=%d conditional=%d notModified=%d evictions=%d",
+                    pages.size(), bytes, lookups, hits, notModified, evictions);
+        }
+
+        // url, etag, lastModified, link count, links (empty string = no validator)
+        synchronized void save(Path file) throws IOException {
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp.toFile())))) {
+                out.writeInt(pages.size());
+                for (Map.Entry<String, CachedPage> entry : pages.entrySet()) { // Oldest first, so reload keeps LRU order
+                    CachedPage page = entry.getValue();
+                    out.writeUTF(entry.getKey());
+                    out.writeUTF(page.etag == null ? "" : page.etag);
+                    out.writeUTF(page.lastModified == null ? "" : page.lastModified);
+                    out.writeInt(page.links.length);
+                    for (String link : page.links) out.writeUTF(link);
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
 
-        for (String newUrl : newUrls) {
-            if (visitedUrls.add(newUrl)) { // Avoid duplicates
-                urlQueue.add(newUrl); // Add new URLs to the queue
+        synchronized void load(Path file) throws IOException {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file.toFile())))) {
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    String url = in.readUTF();
+                    String etag = in.readUTF();
+                    String lastModified = in.readUTF();
+                    int linkCount = in.readInt();
+                    List<String> links = new ArrayList<>(linkCount);
+                    for (int j = 0; j < linkCount; j++) links.add(in.readUTF());
+                    put(url, etag.isEmpty() ? null : etag, lastModified.isEmpty() ? null : lastModified, links);
+                }
             }
         }
     }
 
-    // Main method to run the crawler
-    public static void main(String[] args) {
+    // Discards a body nobody parses. Past MAX_DRAIN_BYTES it cancels the subscription, which makes
+    // HttpClient close the connection instead of downloading the rest.
+    private static final class CappedDiscard implements HttpResponse.BodySubscriber<Void> {
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+        private Flow.Subscription subscription;
+        private long discarded;
+
+        @Override
+        public CompletionStage<Void> getBody() {
+            return done;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> buffers) {
+            for (ByteBuffer buffer : buffers) discarded += buffer.remaining();
+            if (discarded > MAX_DRAIN_BYTES && done.complete(null)) subscription.cancel();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            done.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            done.complete(null);
+        }
+    }
+
+    // Feeds HttpClient body chunks into a LinkExtractor
+    private static final class LinkSubscriber implements Flow.Subscriber<List<ByteBuffer>> {
+        private final LinkExtractor extractor;
+
+        LinkSubscriber(LinkExtractor extractor) {
+            this.extractor = extractor;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> buffers) {
+            for (ByteBuffer buffer : buffers) extractor.feed(buffer);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            // Links found before the failure are already queued
+        }
+
+        @Override
+        public void onComplete() {
+        }
+    }
+
+    // Streaming href/src extractor: a byte-level HTML tag scanner fed in chunks.
+    // Only attribute values that are links are ever turned into Strings.
+    static final class LinkExtractor {
+        private static final int TEXT = 0, TAG_OPEN = 1, TAG_NAME = 2, END_TAG = 3, BEFORE_ATTR = 4,
+                ATTR_NAME = 5, AFTER_ATTR_NAME = 6, BEFORE_VALUE = 7, QUOTED_VALUE = 8, UNQUOTED_VALUE = 9,
+                MARKUP_DECL = 10, COMMENT = 11, RAW_TEXT = 12;
+        private static final int MAX_NAME = 8;        // Longer tag/attribute names are never interesting
+        private static final int MAX_VALUE = 4096;    // Longer URLs are dropped
+        private static final byte[] SCRIPT = "script".getBytes(StandardCharsets.US_ASCII);
+        private static final byte[] STYLE = "style".getBytes(StandardCharsets.US_ASCII);
+
+        private final Consumer<String> sink;
+        private URI base;
+        private int state = TEXT;
+        private final byte[] tagName = new byte[MAX_NAME];
+        private int tagNameLen;
+        private final byte[] attrName = new byte[MAX_NAME];
+        private int attrNameLen;
+        private byte[] value = new byte[256];
+        private int valueLen;
+        private boolean capture;      // Current attribute is href/src
+        private boolean valueTooLong;
+        private byte quote;
+        private int dashes;           // Consecutive '-' seen (comments)
+        private byte[] rawEnd;        // Tag name that closes a raw-text element
+        private int rawMatch;         // Bytes of "</" + rawEnd matched so far
+        private final byte[] scratch = new byte[8192];
+
+        LinkExtractor(String pageUrl, Consumer<String> sink) {
+            this.sink = sink;
+            try {
+                this.base = new URI(pageUrl);
+            } catch (URISyntaxException e) {
+                this.base = null; // Only absolute links can be resolved
+            }
+        }
+
+        // Scan an entire stream
+        void extract(InputStream in) throws IOException {
+            int n;
+            while ((n = in.read(scratch)) > 0) feed(scratch, 0, n);
+        }
+
+        void feed(ByteBuffer buffer) {
+            if (buffer.hasArray()) {
+                feed(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+                buffer.position(buffer.limit());
+                return;
+            }
+            while (buffer.hasRemaining()) {
+                int n = Math.min(scratch.length, buffer.remaining());
+                buffer.get(scratch, 0, n);
+                feed(scratch, 0, n);
+            }
+        }
+
+        void feed(byte[] buf, int off, int len) {
+            int end = off + len;
+            for (int i = off; i < end; i++) {
+                byte b = buf[i];
+                switch (state) {
+                    case TEXT:
+                        if (b == '<') state = TAG_OPEN;
+                        break;
+                    case TAG_OPEN:
+                        if (isLetter(b)) {
+                            tagNameLen = 0;
+                            appendName(tagName, b, true);
+                            state = TAG_NAME;
+                        } else if (b == '/') {
+                            state = END_TAG;
+                        } else if (b == '!') {
+                            dashes = 0;
+                            state = MARKUP_DECL;
+                        } else {
+                            state = b == '<' ? TAG_OPEN : TEXT;
+                        }
+                        break;
+                    case MARKUP_DECL: // "<!--" starts a comment, anything else (doctype) ends at '>'
+                        if (b == '-' && ++dashes == 2) {
+                            dashes = 0;
+                            state = COMMENT;
+                        } else if (b == '>') {
+                            state = TEXT;
+                        } else if (b != '-') {
+                            dashes = 0;
+                        }
+                        break;
+                    case COMMENT:
+                        if (b == '-') {
+                            dashes++;
+                        } else {
+                            if (b == '>' && dashes >= 2) state = TEXT;
+                            dashes = 0;
+                        }
+                        break;
+                    case END_TAG:
+                        if (b == '>') state = TEXT;
+                        break;
+                    case TAG_NAME:
+                        if (isSpace(b) || b == '/') {
+                            state = BEFORE_ATTR;
+                        } else if (b == '>') {
+                            endOfTag();
+                        } else {
+                            appendName(tagName, b, true);
+                        }
+                        break;
+                    case BEFORE_ATTR:
+                        if (b == '>') {
+                            endOfTag();
+                        } else if (!isSpace(b) && b != '/') {
+                            attrNameLen = 0;
+                            appendName(attrName, b, false);
+                            state = ATTR_NAME;
+                        }
+                        break;
+                    case ATTR_NAME:
+                        if (b == '=') {
+                            startValue();
+                        } else if (isSpace(b)) {
+                            state = AFTER_ATTR_NAME;
+                        } else if (b == '>') {
+                            endOfTag();
+                        } else if (b == '/') {
+                            state = BEFORE_ATTR;
+                        } else {
+                            appendName(attrName, b, false);
+                        }
+                        break;
+                    case AFTER_ATTR_NAME:
+                        if (b == '=') {
+                            startValue();
+                        } else if (b == '>') {
+                            endOfTag();
+                        } else if (!isSpace(b) && b != '/') {
+                            attrNameLen = 0;
+                            appendName(attrName, b, false);
+                            state = ATTR_NAME;
+                        }
+                        break;
+                    case BEFORE_VALUE:
+                        if (b == '"' || b == '\'') {
+                            quote = b;
+                            state = QUOTED_VALUE;
+                        } else if (b == '>') {
+                            endOfTag();
+                        } else if (!isSpace(b)) {
+                            appendValue(b);
+                            state = UNQUOTED_VALUE;
+                        }
+                        break;
+                    case QUOTED_VALUE:
+                        if (b == quote) {
+                            finishValue();
+                            state = BEFORE_ATTR;
+                        } else {
+                            appendValue(b);
+                        }
+                        break;
+                    case UNQUOTED_VALUE:
+                        if (isSpace(b)) {
+                            finishValue();
+                            state = BEFORE_ATTR;
+                        } else if (b == '>') {
+                            finishValue();
+                            endOfTag();
+                        } else {
+                            appendValue(b);
+                        }
+                        break;
+                    case RAW_TEXT: // Inside <script>/<style>: only look for the closing tag
+                        rawMatch = matchRawEnd(b);
+                        if (rawMatch == rawEnd.length + 2) state = END_TAG;
+                        break;
+                    default:
+                        state = TEXT;
+                }
+            }
+        }
+
+        // Advance the "</script" / "</style" matcher by one byte
+        private int matchRawEnd(byte b) {
+            if (rawMatch == 0) return b == '<' ? 1 : 0;
+            if (rawMatch == 1) return b == '/' ? 2 : (b == '<' ? 1 : 0);
+            if (lower(b) == rawEnd[rawMatch - 2]) return rawMatch + 1;
+            return b == '<' ? 1 : 0;
+        }
+
+        private void endOfTag() {
+            if (nameIs(tagName, tagNameLen, SCRIPT)) {
+                rawEnd = SCRIPT;
+            } else if (nameIs(tagName, tagNameLen, STYLE)) {
+                rawEnd = STYLE;
+            } else {
+                state = TEXT;
+                return;
+            }
+            rawMatch = 0;
+            state = RAW_TEXT;
+        }
+
+        private void startValue() {
+            capture = isAttr("href") || isAttr("src");
+            valueLen = 0;
+            valueTooLong = false;
+            state = BEFORE_VALUE;
+        }
+
+        private void appendValue(byte b) {
+            if (!capture) return;
+            if (valueLen == MAX_VALUE) {
+                valueTooLong = true;
+                return;
+            }
+            if (valueLen == value.length) value = Arrays.copyOf(value, Math.min(MAX_VALUE, value.length * 2));
+            value[valueLen++] = b;
+        }
+
+        private void finishValue() {
+            if (!capture || valueTooLong || valueLen == 0) return;
+            String raw = new String(value, 0, valueLen, StandardCharsets.UTF_8);
+            boolean isBase = tagNameLen == 4 && tagName[0] == 'b' && tagName[1] == 'a'
+                    && tagName[2] == 's' && tagName[3] == 'e' && isAttr("href");
+            String link = normalize(base, raw);
+            if (link == null) return;
+            if (isBase) {
+                base = URI.create(link); // <base href> changes how later links resolve
+            } else {
+                sink.accept(link);
+            }
+        }
+
+        private boolean isAttr(String name) {
+            if (attrNameLen != name.length()) return false;
+            for (int i = 0; i < attrNameLen; i++) {
+                if (attrName[i] != name.charAt(i)) return false;
+            }
+            return true;
+        }
+
+        private static boolean nameIs(byte[] name, int len, byte[] expected) {
+            if (len != expected.length) return false;
+            for (int i = 0; i < len; i++) {
+                if (name[i] != expected[i]) return false;
+            }
+            return true;
+        }
+
+        // Lower-cased, length-capped name; overlong names can never match
+        private void appendName(byte[] name, byte b, boolean tag) {
+            int len = tag ? tagNameLen : attrNameLen;
+            if (len < MAX_NAME) name[len] = lower(b);
+            len = Math.min(len + 1, MAX_NAME + 1);
+            if (tag) tagNameLen = len; else attrNameLen = len;
+        }
+
+        private static byte lower(byte b) {
+            return b >= 'A' && b <= 'Z' ? (byte) (b + 32) : b;
+        }
+
+        private static boolean isLetter(byte b) {
+            return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z');
+        }
+
+        private static boolean isSpace(byte b) {
+            return b == ' ' || b == '\n' || b == '\t' || b == '\r' || b == '\f';
+        }
+
+        // Resolve against base and normalize: http(s) only, lower-case scheme/host,
+        // no default port, no fragment, dot segments removed, empty path becomes "/"
+        static String normalize(URI base, String raw) {
+            String ref = raw.trim();
+            if (ref.isEmpty() || ref.charAt(0) == '#') return null;
+            if (ref.indexOf('&') >= 0) ref = ref.replace("&amp;", "&");
+            if (ref.indexOf(' ') >= 0) ref = ref.replace(" ", "%20");
+            try {
+                URI uri = new URI(ref);
+                if (!uri.isAbsolute()) {
+                    if (base == null) return null;
+                    uri = base.resolve(uri);
+                }
+                String scheme = uri.getScheme() == null ? null : uri.getScheme().toLowerCase(Locale.ROOT);
+                if (!"http".equals(scheme) && !"https".equals(scheme)) return null;
+                String host = uri.getHost();
+                if (host == null) return null;
+                int port = uri.getPort();
+                if ((port == 80 && scheme.equals("http")) || (port == 443 && scheme.equals("https"))) port = -1;
+                String path = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+                URI normalized = new URI(scheme + "://" + host.toLowerCase(Locale.ROOT) + (port == -1 ? "" : ":" + port)
+                        + path + (uri.getRawQuery() == null ? "" : "?" + uri.getRawQuery())).normalize();
+                return normalized.toString();
+            } catch (URISyntaxException | IllegalArgumentException e) {
+                return null; // Malformed links are skipped
+            }
+        }
+    }
+
+    // A URL waiting in the frontier
+    static final class FrontierEntry {
+        final String url;
+        final int depth;    // Link distance from the start URL
+        final int priority; // Lower is crawled sooner
+        final long seq;     // Insertion order, breaks priority ties
+
+        FrontierEntry(String url, int depth, int priority, long seq) {
+            this.url = url;
+            this.depth = depth;
+            this.priority = priority;
+            this.seq = seq;
+        }
+    }
+
+    // URL frontier with per-host priority queues, round-robin host selection and a disk spill
+    static final class UrlFrontier {
+        private final Map<String, PriorityQueue<FrontierEntry>> hostQueues = new HashMap<>();
+        private final ArrayDeque<String> readyHosts = new ArrayDeque<>(); // Hosts with queued entries, in turn order
+        private int maxInMemory;
+        private int inMemory;     // Entries currently held in hostQueues
+        private long spilled;     // Entries written to the spill file but not yet read back
+        private long spillRead;   // Entries already read back from the current spill file
+        private long seq;
+        private Path spillFile;
+        private DataOutputStream spillOut;
+        private DataInputStream spillIn;
+
+        private long enqueued, dequeued, spilledTotal;
+        private long lastEnqueued, lastDequeued, lastStatsNanos = System.nanoTime();
+        private List<FrontierEntry> journal; // Entries added since the last drainJournal(); null when off
+
+        UrlFrontier(int maxInMemory) {
+            setMaxInMemory(maxInMemory);
+        }
+
+        synchronized void setMaxInMemory(int maxInMemory) {
+            if (maxInMemory < 2) throw new IllegalArgumentException("maxInMemory must be at least 2");
+            this.maxInMemory = maxInMemory;
+        }
+
+        // Queue a URL; goes to disk when the in-memory part is full
+        synchronized void add(String url, int depth, int priority) {
+            enqueued++;
+            if (journal != null) journal.add(new FrontierEntry(url, depth, priority, 0));
+            if (inMemory < maxInMemory) {
+                addInMemory(new FrontierEntry(url, depth, priority, seq++));
+            } else {
+                spill(url, depth, priority);
+            }
+        }
+
+        // Next entry from the next host in round-robin order, or null if empty
+        synchronized FrontierEntry poll() {
+            return poll(host -> true);
+        }
+
+        // Like poll(), but hosts rejected by hostAccepts keep their entries and their turn is skipped.
+        // Returns null if no accepted host has work.
+        synchronized FrontierEntry poll(Predicate<String> hostAccepts) {
+            if (inMemory < maxInMemory / 2 && spilled > 0) refill();
+
+            for (int turns = readyHosts.size(); turns > 0; turns--) {
+                String host = readyHosts.poll();
+                if (!hostAccepts.test(host)) {
+                    readyHosts.add(host); // Stays queued for a later call
+                    continue;
+                }
+                PriorityQueue<FrontierEntry> queue = hostQueues.get(host);
+                FrontierEntry entry = queue.poll();
+                if (queue.isEmpty()) {
+                    hostQueues.remove(host); // Keep the map sized to hosts with pending work
+                } else {
+                    readyHosts.add(host); // Back of the line
+                }
+                inMemory--;
+                dequeued++;
+                return entry;
+            }
+            return null;
+        }
+
+        synchronized boolean isEmpty() {
+            return inMemory == 0 && spilled == 0;
+        }
+
+        synchronized long size() {
+            return inMemory + spilled;
+        }
+
+        // Totals plus enqueue/dequeue rates since the previous call
+        synchronized String stats() {
+            long now = System.nanoTime();
+            double seconds = Math.max((now - lastStatsNanos) / 1e9, 1e-9);
+            String line = String.format("frontier: size=%d inMemory=%d spilled=%d hosts=%d enqueued=%d dequeued=%d "
+                            + "spilledTotal=%d enqueue=%.0f/s dequeue=%.0f/s",
+                    inMemory + spilled, inMemory, spilled, hostQueues.size(), enqueued, dequeued, spilledTotal,
+                    (enqueued - lastEnqueued) / seconds, (dequeued - lastDequeued) / seconds);
+            lastEnqueued = enqueued;
+            lastDequeued = dequeued;
+            lastStatsNanos = now;
+            return line;
+        }
+
+        synchronized void close() {
+            closeSpill();
+        }
+
+        // Record every later add() so checkpoints can log deltas instead of the whole frontier
+        synchronized void setJournaling(boolean journaling) {
+            journal = journaling ? new ArrayList<>() : null;
+        }
+
+        // Entries added since the previous call; O(1), the list is handed over rather than copied
+        synchronized List<FrontierEntry> drainJournal() {
+            if (journal == null) return new ArrayList<>();
+            List<FrontierEntry> drained = journal;
+            journal = new ArrayList<>();
+            return drained;
+        }
+
+        // Put back a drained batch that could not be written
+        synchronized void restoreJournal(List<FrontierEntry> batch) {
+            if (journal != null) journal.addAll(0, batch);
+        }
+
+        private void addInMemory(FrontierEntry entry) {
+            String host = hostOf(entry.url);
+            PriorityQueue<FrontierEntry> queue = hostQueues.get(host);
+            if (queue == null) {
+                queue = new PriorityQueue<>((a, b) -> a.priority != b.priority
+                        ? Integer.compare(a.priority, b.priority)
+                        : Long.compare(a.seq, b.seq));
+                hostQueues.put(host, queue);
+                readyHosts.add(host);
+            }
+            queue.add(entry);
+            inMemory++;
+        }
+
+        private void spill(String url, int depth, int priority) {
+            try {
+                if (spillOut == null) {
+                    spillFile = Files.createTempFile("crawler-frontier", ".spill");
+                    spillOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(spillFile.toFile())));
+                    spillIn = new DataInputStream(new BufferedInputStream(new FileInputStream(spillFile.toFile())));
+                }
+                spillOut.writeInt(depth);
+                spillOut.writeInt(priority);
+                spillOut.writeUTF(url);
+                spilled++;
+                spilledTotal++;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Frontier spill failed", e);
+            }
+        }
+
+        // Move spilled entries back into memory, oldest first
+        private void refill() {
+            try {
+                spillOut.flush(); // Make pending writes visible to the reader
+                while (spilled > 0 && inMemory < maxInMemory) {
+                    int depth = spillIn.readInt();
+                    int priority = spillIn.readInt();
+                    String url = spillIn.readUTF();
+                    spilled--;
+                    spillRead++;
+                    addInMemory(new FrontierEntry(url, depth, priority, seq++));
+                }
+                if (spilled == 0) closeSpill(); // Start a fresh segment next time
+            } catch (IOException e) {
+                throw new UncheckedIOException("Frontier refill failed", e);
+            }
+        }
+
+        private void closeSpill() {
+            try {
+                if (spillOut != null) spillOut.close();
+                if (spillIn != null) spillIn.close();
+                if (spillFile != null) Files.deleteIfExists(spillFile);
+            } catch (IOException e) {
+                System.err.println("Failed to remove frontier spill file: " + e.getMessage());
+            }
+            spillOut = null;
+            spillIn = null;
+            spillFile = null;
+            spillRead = 0;
+        }
+
+        // Host part of a URL without allocating a URI
+        static String hostOf(String url) {
+            int start = url.indexOf("://");
+            start = start < 0 ? 0 : start + 3;
+            int end = start;
+            while (end < url.length()) {
+                char c = url.charAt(end);
+                if (c == '/' || c == ':' || c == '?' || c == '#') break;
+                end++;
+            }
+            return url.substring(start, end);
+        }
+    }
+
+    // Politeness layer: hands out frontier entries only when their host has a token and a free slot
+    static final class HostScheduler {
+        private final UrlFrontier frontier;
+        private final int maxBuffered; // Entries held here across all hosts
+        private final int maxBufferedPerHost; // Beyond this a host's entries stay in the frontier
+        private final Map<String, HostState> hosts = new HashMap<>();
+        private final PriorityQueue<HostState> ready = // Hosts with work, by time their next token is due
+                new PriorityQueue<>((a, b) -> Long.compare(a.readyAt, b.readyAt));
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition changed = lock.newCondition();
+        private int buffered;
+        private final Set<Lease> active = new HashSet<>(); // Leases handed out and not yet released
+        private List<String> completed = new ArrayList<>(); // Finished since the last snapshot
+        private boolean journaling; // Record completed URLs for checkpoints
+        private double ratePerSecond;
+        private int burst;
+        private int maxConcurrent;
+        private final long startNanos = System.nanoTime();
+
+        // A frontier entry handed to a worker; must be passed back to release()
+        static final class Lease {
+            final FrontierEntry entry;
+            final HostState host;
+            final long bufferedAt; // When the scheduler took it from the frontier
+
+            Lease(FrontierEntry entry, HostState host, long bufferedAt) {
+                this.entry = entry;
+                this.host = host;
+                this.bufferedAt = bufferedAt;
+            }
+        }
+
+        static final class HostState {
+            final String host;
+            final ArrayDeque<Lease> pending = new ArrayDeque<>();
+            double tokens;
+            long lastRefill;
+            long readyAt;      // Earliest time a token is available
+            int active;        // Fetches currently running
+            boolean queued;    // In the ready queue
+            long fetched;
+            long totalWaitNanos;
+            long maxWaitNanos;
+
+            HostState(String host, double tokens, long now) {
+                this.host = host;
+                this.tokens = tokens;
+                this.lastRefill = now;
+            }
+        }
+
+        HostScheduler(UrlFrontier frontier, int maxBuffered, int maxBufferedPerHost) {
+            this.frontier = frontier;
+            this.maxBuffered = maxBuffered;
+            this.maxBufferedPerHost = maxBufferedPerHost;
+        }
+
+        void setPoliteness(double requestsPerSecond, int burst, int maxConcurrentPerHost) {
+            if (!(requestsPerSecond > 0) || burst < 1 || maxConcurrentPerHost < 1) {
+                throw new IllegalArgumentException("rate, burst and concurrency must be positive");
+            }
+            lock.lock();
+            try {
+                this.ratePerSecond = requestsPerSecond;
+                this.burst = burst;
+                this.maxConcurrent = maxConcurrentPerHost;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Next entry whose host is allowed to be fetched now. Waits up to maxWaitNanos for a
+        // throttled host; returns null at once if there is no work at all.
+        Lease take(long maxWaitNanos) throws InterruptedException {
+            lock.lock();
+            try {
+                long deadline = System.nanoTime() + maxWaitNanos;
+                while (true) {
+                    fill();
+                    long now = System.nanoTime();
+                    HostState head = ready.peek();
+                    if (head == null) {
+                        if (buffered == 0 && active.isEmpty()) return null; // Quiescent: nothing can add work
+                    } else {
+                        refill(head, now);
+                        if (head.tokens >= 1) {
+                            ready.poll();
+                            head.queued = false;
+                            return grant(head, now);
+                        }
+                        // Refill could not produce a token yet: re-sort by the new due time
+                        ready.poll();
+                        head.readyAt = now + (long) ((1 - head.tokens) / ratePerSecond * 1e9);
+                        ready.add(head);
+                    }
+                    long wait = Math.min(deadline, ready.isEmpty() ? deadline : ready.peek().readyAt) - now;
+                    if (now >= deadline) return null;
+                    if (wait > 0) changed.awaitNanos(wait);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Return a host slot after the fetch finished. done = false keeps the entry pending in checkpoints.
+        void release(Lease lease, boolean done) {
+            lock.lock();
+            try {
+                HostState host = lease.host;
+                host.active--;
+                active.remove(lease);
+                if (journaling && done) completed.add(lease.entry.url);
+                enqueueIfRunnable(host);
+                changed.signalAll(); // New links may have been added by the finished fetch
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void setJournaling(boolean journaling) {
+            lock.lock();
+            try {
+                this.journaling = journaling;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Crawl changes captured for a checkpoint
+        static final class Snapshot {
+            final List<String> completed;        // URLs finished since the previous snapshot
+            final List<FrontierEntry> added;     // Entries added to the frontier since the previous snapshot
+
+            Snapshot(List<String> completed, List<FrontierEntry> added) {
+                this.completed = completed;
+                this.added = added;
+            }
+        }
+
+        // Swaps out the two delta lists, so the pause does not depend on frontier size. Holding the
+        // scheduler lock keeps them consistent: a URL can only complete after it was added, so its
+        // COMPLETED record never lands in an earlier checkpoint than its ADDED record.
+        Snapshot snapshot() {
+            lock.lock();
+            try {
+                Snapshot snapshot = new Snapshot(completed, frontier.drainJournal());
+                completed = new ArrayList<>();
+                return snapshot;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Merge back a snapshot whose write failed, so the next checkpoint includes it
+        void restore(Snapshot snapshot) {
+            lock.lock();
+            try {
+                completed.addAll(0, snapshot.completed);
+                frontier.restoreJournal(snapshot.added);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        boolean isEmpty() {
+            lock.lock();
+            try {
+                return buffered == 0 && frontier.isEmpty();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // No queued work and no fetch in progress. Fetches queue their links before release(),
+        // so once this is true no more work can appear.
+        boolean isQuiescent() {
+            lock.lock();
+            try {
+                return buffered == 0 && active.isEmpty() && frontier.isEmpty();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Entries waiting in the frontier and in per-host buffers
+        long queueDepth() {
+            lock.lock();
+            try {
+                return buffered + frontier.size();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // One line per host, busiest first
+        String stats(int topHosts) {
+            lock.lock();
+            try {
+                double seconds = Math.max((System.nanoTime() - startNanos) / 1e9, 1e-9);
+                List<HostState> sorted = new ArrayList<>(hosts.values());
+                sorted.sort((a, b) -> Long.compare(b.fetched, a.fetched));
+                StringBuilder sb = new StringBuilder();
+                for (int i = 0; i < Math.min(topHosts, sorted.size()); i++) {
+                    HostState h = sorted.get(i);
+                    sb.append(String.format("host %s: fetched=%d rate=%.1f/s pending=%d active=%d "
+                                    + "avgWait=%.1fms maxWait=%.1fms%n",
+                            h.host, h.fetched, h.fetched / seconds, h.pending.size(), h.active,
+                            h.fetched == 0 ? 0 : h.totalWaitNanos / 1e6 / h.fetched, h.maxWaitNanos / 1e6));
+                }
+                return sb.toString();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private Lease grant(HostState host, long now) {
+            host.tokens -= 1;
+            host.active++;
+            Lease lease = host.pending.poll();
+            buffered--;
+            active.add(lease);
+            long waited = now - lease.bufferedAt;
+            host.fetched++;
+            host.totalWaitNanos += waited;
+            host.maxWaitNanos = Math.max(host.maxWaitNanos, waited);
+            enqueueIfRunnable(host);
+            return lease;
+        }
+
+        // Pull entries from the frontier into per-host buffers. A throttled host can hold at most
+        // maxBufferedPerHost of them, so it cannot crowd other hosts out of the buffer.
+        private void fill() {
+            while (buffered < maxBuffered) {
+                FrontierEntry entry = frontier.poll(this::hasBufferRoom);
+                if (entry == null) return;
+                long now = System.nanoTime();
+                String name = UrlFrontier.hostOf(entry.url);
+                HostState host = hosts.get(name);
+                if (host == null) {
+                    host = new HostState(name, burst, now);
+                    hosts.put(name, host);
+                }
+                host.pending.add(new Lease(entry, host, now));
+                buffered++;
+                enqueueIfRunnable(host);
+            }
+        }
+
+        private boolean hasBufferRoom(String name) {
+            HostState host = hosts.get(name);
+            return host == null || host.pending.size() < maxBufferedPerHost;
+        }
+
+        private void enqueueIfRunnable(HostState host) {
+            if (host.queued || host.pending.isEmpty() || host.active >= maxConcurrent) return;
+            long now = System.nanoTime();
+            refill(host, now);
+            host.readyAt = host.tokens >= 1 ? now : now + (long) ((1 - host.tokens) / ratePerSecond * 1e9);
+            host.queued = true;
+            ready.add(host);
+        }
+
+        private void refill(HostState host, long now) {
+            host.tokens = Math.min(burst, host.tokens + (now - host.lastRefill) / 1e9 * ratePerSecond);
+            host.lastRefill = now;
+        }
+    }
+
+    // Append-only checkpoint log written through a FileChannel.
+    // Record layout: type (1 byte), payload length (4), CRC32 of payload (4), payload.
+    // A checkpoint group is ADDED (frontier entries added since the previous group), COMPLETED (URLs
+    // finished since the previous group) and COMMIT. Pending work is every added entry not yet completed.
+    static final class CheckpointLog {
+        private static final byte COMPLETED = 1, ADDED = 2, COMMIT = 3;
+        private static final int HEADER = 9;
+        private static final long COMPACT_MIN_BYTES = 1 << 20;
+        private static final int COMPACT_CHUNK = 1 << 16; // Entries per ADDED record written by compact()
+
+        private final Path file;
+        private FileChannel channel;
+        private long checkpoints;
+        private long addedBytes, addedEntries; // Committed ADDED records, including entries completed since
+        private long completedEntries;         // URLs completed since those ADDED records were written
+        private long totalPauseNanos, maxPauseNanos, lastPauseNanos, totalWriteNanos, maxWriteNanos;
+        private long appended;
+
+        // Restored crawl state
+        static final class State {
+            final List<String> completed = new ArrayList<>();
+            final List<FrontierEntry> pending = new ArrayList<>();
+            long checkpoints;
+        }
+
+        // Reads records front to back and stops at the first torn or corrupt one
+        private static final class RecordReader {
+            private final FileChannel channel;
+            private final long size;
+            private final ByteBuffer header = ByteBuffer.allocate(HEADER);
+            long pos, end;       // Current record spans [pos, end)
+            byte type;
+            ByteBuffer payload;
+
+            RecordReader(FileChannel channel) throws IOException {
+                this.channel = channel;
+                this.size = channel.size();
+            }
+
+            boolean next() throws IOException {
+                pos = end;
+                if (pos + HEADER > size) return false;
+                header.clear();
+                readFully(header, pos);
+                header.flip();
+                type = header.get();
+                int length = header.getInt();
+                int crc = header.getInt();
+                if (length < 0 || pos + HEADER + length > size) return false; // Torn write
+                payload = ByteBuffer.allocate(length);
+                readFully(payload, pos + HEADER);
+                payload.flip();
+                if (crc(payload) != crc) return false;
+                end = pos + HEADER + length;
+                return true;
+            }
+
+            long recordBytes() {
+                return end - pos;
+            }
+
+            private void readFully(ByteBuffer buf, long at) throws IOException {
+                while (buf.hasRemaining() && channel.read(buf, at + buf.position()) > 0) {
+                    // Keep reading
+                }
+            }
+        }
+
+        CheckpointLog(Path file) {
+            this.file = file;
+        }
+
+        // Open (or create) the log and read back every committed checkpoint
+        State open() throws IOException {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            State state = new State();
+            List<FrontierEntry> added = new ArrayList<>();
+            List<String> groupCompleted = new ArrayList<>();
+            List<FrontierEntry> groupAdded = new ArrayList<>();
+            long groupAddedBytes = 0, committedEnd = 0;
+            addedBytes = addedEntries = completedEntries = 0;
+
+            RecordReader reader = new RecordReader(channel);
+            while (reader.next()) {
+                if (reader.type == COMPLETED) {
+                    readUrls(reader.payload, groupCompleted);
+                } else if (reader.type == ADDED) {
+                    groupAdded.addAll(readEntries(reader.payload));
+                    groupAddedBytes += reader.recordBytes();
+                } else if (reader.type == COMMIT) {
+                    added.addAll(groupAdded);
+                    addedEntries += groupAdded.size();
+                    addedBytes += groupAddedBytes;
+                    state.completed.addAll(groupCompleted);
+                    completedEntries += groupCompleted.size();
+                    state.checkpoints++;
+                    committedEnd = reader.end;
+                    groupCompleted.clear();
+                    groupAdded.clear();
+                    groupAddedBytes = 0;
+                } else {
+                    break;
+                }
+            }
+            channel.truncate(committedEnd); // Drop an unfinished checkpoint
+            channel.position(committedEnd);
+            checkpoints = state.checkpoints;
+
+            long[] done = sortedFingerprints(state.completed);
+            for (FrontierEntry entry : added) {
+                if (!contains(done, entry.url)) state.pending.add(entry);
+            }
+            return state;
+        }
+
+        // Append one checkpoint group and force it to disk. On failure the file is cut back to the
+        // previous group, so the caller can retry the same deltas with the next checkpoint.
+        synchronized void append(List<String> completed, List<FrontierEntry> added, long pauseNanos) throws IOException {
+            if (channel == null) open();
+            long start = System.nanoTime();
+            ByteBuffer addedRecord = record(ADDED, encodeEntries(added));
+            ByteBuffer completedRecord = record(COMPLETED, encodeUrls(completed));
+            ByteBuffer commit = record(COMMIT, ByteBuffer.allocate(8).putLong(0, checkpoints + 1));
+            long groupStart = channel.position();
+            long groupAddedBytes = addedRecord.remaining();
+            try {
+                ByteBuffer[] group = {addedRecord, completedRecord, commit};
+                while (commit.hasRemaining()) channel.write(group);
+                channel.force(false);
+            } catch (IOException e) {
+                try {
+                    channel.truncate(groupStart);
+                    channel.position(groupStart);
+                } catch (IOException truncateFailure) {
+                    e.addSuppressed(truncateFailure);
+                }
+                throw e;
+            }
+
+            checkpoints++;
+            addedBytes += groupAddedBytes;
+            addedEntries += added.size();
+            completedEntries += completed.size();
+
+            long write = System.nanoTime() - start;
+            appended++;
+            lastPauseNanos = pauseNanos;
+            totalPauseNanos += pauseNanos;
+            maxPauseNanos = Math.max(maxPauseNanos, pauseNanos);
+            totalWriteNanos += write;
+            maxWriteNanos = Math.max(maxWriteNanos, write);
+        }
+
+        synchronized String stats() {
+            return String.format("checkpoints: count=%d logSize=%d pause last=%.2fms avg=%.2fms max=%.2fms "
+                            + "write avg=%.2fms max=%.2fms",
+                    checkpoints, sizeOrZero(), lastPauseNanos / 1e6,
+                    appended == 0 ? 0 : totalPauseNanos / 1e6 / appended, maxPauseNanos / 1e6,
+                    appended == 0 ? 0 : totalWriteNanos / 1e6 / appended, maxWriteNanos / 1e6);
+        }
+
+        synchronized void close() {
+            try {
+                if (channel != null) channel.close();
+            } catch (IOException e) {
+                System.err.println("Failed to close checkpoint log: " + e.getMessage());
+            }
+            channel = null;
+        }
+
+        // Called after a successful append, never from its error path: the group is already committed,
+        // so a failed compaction is only logged and the current log stays in use
+        synchronized void compactIfNeeded() {
+            try {
+                if (channel != null && channel.size() > COMPACT_MIN_BYTES && 2 * deadBytes() > channel.size()) {
+                    compact();
+                }
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Checkpoint log compaction failed: " + e.getMessage());
+            }
+        }
+
+        // Estimated bytes of ADDED entries that have completed since and are no longer needed
+        private long deadBytes() {
+            return addedEntries == 0 ? 0 : (long) (addedBytes * Math.min(1.0, (double) completedEntries / addedEntries));
+        }
+
+        // Rewrite the log as all COMPLETED records plus the ADDED entries still pending. Both passes
+        // go record by record; besides the current record only the completed fingerprints (8 bytes per
+        // URL) are held in memory.
+        private void compact() throws IOException {
+            long[] done = new long[1024];
+            int doneCount = 0;
+            List<String> urls = new ArrayList<>();
+            RecordReader reader = new RecordReader(channel);
+            while (reader.next()) {
+                if (reader.type != COMPLETED) continue;
+                readUrls(reader.payload, urls);
+                if (doneCount + urls.size() > done.length) {
+                    done = Arrays.copyOf(done, Math.max(2 * done.length, doneCount + urls.size()));
+                }
+                for (String url : urls) done[doneCount++] = CompactVisitedSet.fingerprint(url);
+                urls.clear();
+            }
+            done = Arrays.copyOf(done, doneCount);
+            Arrays.sort(done);
+
+            Path tmp = file.resolveSibling(file.getFileName() + ".compact");
+            long keptEntries = 0, keptBytes = 0;
+            try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                List<FrontierEntry> chunk = new ArrayList<>();
+                reader = new RecordReader(channel);
+                while (reader.next()) {
+                    if (reader.type == COMPLETED) {
+                        long copied = 0;
+                        while (copied < reader.recordBytes()) {
+                            copied += channel.transferTo(reader.pos + copied, reader.recordBytes() - copied, out);
+                        }
+                    } else if (reader.type == ADDED) {
+                        for (FrontierEntry entry : readEntries(reader.payload)) {
+                            if (contains(done, entry.url)) continue;
+                            chunk.add(entry);
+                            if (chunk.size() == COMPACT_CHUNK) {
+                                keptEntries += chunk.size();
+                                keptBytes += writeAdded(out, chunk);
+                            }
+                        }
+                    }
+                }
+                if (!chunk.isEmpty()) {
+                    keptEntries += chunk.size();
+                    keptBytes += writeAdded(out, chunk);
+                }
+                out.write(record(COMMIT, ByteBuffer.allocate(8).putLong(0, checkpoints)));
+                out.force(false);
+            }
+            try {
+                channel.close();
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                Files.deleteIfExists(tmp);
+                throw e;
+            } finally {
+                // Reopen whichever file is in place now, so later checkpoints keep appending. If even
+                // that fails, channel stays null and the next append reopens the log from scratch.
+                channel = null;
+                FileChannel reopened = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                reopened.position(reopened.size());
+                channel = reopened;
+            }
+            addedEntries = keptEntries;
+            addedBytes = keptBytes;
+            completedEntries = 0;
+        }
+
+        // Writes chunk as one ADDED record and clears it; returns the record size
+        private static long writeAdded(FileChannel out, List<FrontierEntry> chunk) throws IOException {
+            ByteBuffer record = record(ADDED, encodeEntries(chunk));
+            long bytes = record.remaining();
+            while (record.hasRemaining()) out.write(record);
+            chunk.clear();
+            return bytes;
+        }
+
+        private static long[] sortedFingerprints(List<String> urls) {
+            long[] fingerprints = new long[urls.size()];
+            for (int i = 0; i < fingerprints.length; i++) {
+                fingerprints[i] = CompactVisitedSet.fingerprint(urls.get(i));
+            }
+            Arrays.sort(fingerprints);
+            return fingerprints;
+        }
+
+        private static boolean contains(long[] sortedFingerprints, String url) {
+            return Arrays.binarySearch(sortedFingerprints, CompactVisitedSet.fingerprint(url)) >= 0;
+        }
+
+        private long sizeOrZero() {
+            try {
+                return channel == null ? Files.size(file) : channel.size();
+            } catch (IOException e) {
+                return 0;
+            }
+        }
+
+        private static ByteBuffer record(byte type, ByteBuffer payload) {
+            ByteBuffer record = ByteBuffer.allocate(HEADER + payload.remaining());
+            record.put(type).putInt(payload.remaining()).putInt(crc(payload)).put(payload.duplicate());
+            record.flip();
+            return record;
+        }
+
+        private static int crc(ByteBuffer payload) {
+            CRC32 crc = new CRC32();
+            crc.update(payload.duplicate());
+            return (int) crc.getValue();
+        }
+
+        // count, then (length-prefixed UTF-8 url)*
+        private static ByteBuffer encodeUrls(List<String> urls) {
+            List<byte[]> bytes = new ArrayList<>(urls.size());
+            int size = 4;
+            for (String url : urls) {
+                byte[] b = url.getBytes(StandardCharsets.UTF_8);
+                bytes.add(b);
+                size += 4 + b.length;
+            }
+            ByteBuffer buf = ByteBuffer.allocate(size).putInt(urls.size());
+            for (byte[] b : bytes) buf.putInt(b.length).put(b);
+            buf.flip();
+            return buf;
+        }
+
+        // count, then (depth, priority, length-prefixed UTF-8 url)*
+        private static ByteBuffer encodeEntries(List<FrontierEntry> entries) {
+            List<byte[]> bytes = new ArrayList<>(entries.size());
+            long size = 4;
+            for (FrontierEntry entry : entries) {
+                byte[] b = entry.url.getBytes(StandardCharsets.UTF_8);
+                bytes.add(b);
+                size += 12 + b.length;
+            }
+            if (size > Integer.MAX_VALUE - HEADER) throw new IllegalStateException("Frontier snapshot too large");
+            ByteBuffer buf = ByteBuffer.allocate((int) size).putInt(entries.size());
+            for (int i = 0; i < entries.size(); i++) {
+                FrontierEntry entry = entries.get(i);
+                buf.putInt(entry.depth).putInt(entry.priority).putInt(bytes.get(i).length).put(bytes.get(i));
+            }
+            buf.flip();
+            return buf;
+        }
+
+        private static void readUrls(ByteBuffer buf, List<String> into) {
+            int count = buf.getInt();
+            for (int i = 0; i < count; i++) into.add(readString(buf));
+        }
+
+        private static List<FrontierEntry> readEntries(ByteBuffer buf) {
+            int count = buf.getInt();
+            List<FrontierEntry> entries = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int depth = buf.getInt();
+                int priority = buf.getInt();
+                entries.add(new FrontierEntry(readString(buf), depth, priority, i));
+            }
+            return entries;
+        }
+
+        private static String readString(ByteBuffer buf) {
+            int length = buf.getInt();
+            String s = new String(buf.array(), buf.arrayOffset() + buf.position(), length, StandardCharsets.UTF_8);
+            buf.position(buf.position() + length);
+            return s;
+        }
+    }
+
+    // Dedup layer for URLs that have already been queued
+    public interface VisitedSet {
+        // Returns true if the URL was not seen before (and records it)
+        boolean add(String url);
+
+        boolean contains(String url);
+
+        long size();
+    }
+
+    // Exact set of full URL Strings
+    static final class HashVisitedSet implements VisitedSet {
+        private final Set<String> urls = ConcurrentHashMap.newKeySet();
+
+        @Override
+        public boolean add(String url) {
+            return urls.add(url);
+        }
+
+        @Override
+        public boolean contains(String url) {
+            return urls.contains(url);
+        }
+
+        @Override
+        public long size() {
+            return urls.size();
+        }
+    }
+
+    // Lock-striped Bloom filter in front of a primitive 64-bit fingerprint table
+    static final class CompactVisitedSet implements VisitedSet {
+        private static final int STRIPES = 64; // Power of two
+        private static final int INITIAL_TABLE = 1 << 10;
+
+        private final Stripe[] stripes = new Stripe[STRIPES];
+        private final int hashCount; // Bloom hash functions per URL
+        private final boolean exact;
+
+        // expectedUrls and falsePositiveRate size the Bloom filters; the fingerprint table grows as needed
+        CompactVisitedSet(long expectedUrls, double falsePositiveRate, boolean exact) {
+            if (expectedUrls < 1 || falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+                throw new IllegalArgumentException("expectedUrls must be positive and 0 < falsePositiveRate < 1");
+            }
+            long totalBits = (long) Math.ceil(-expectedUrls * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+            long bitsPerStripe = Math.max(64, (totalBits + STRIPES - 1) / STRIPES);
+            this.hashCount = Math.max(1, (int) Math.round((double) totalBits / expectedUrls * Math.log(2)));
+            this.exact = exact;
+            for (int i = 0; i < STRIPES; i++) {
+                stripes[i] = new Stripe((int) Math.min(Integer.MAX_VALUE - 8, (bitsPerStripe + 63) / 64), exact);
+            }
+        }
+
+        @Override
+        public boolean add(String url) {
+            long fp = fingerprint(url);
+            Stripe stripe = stripes[(int) (fp >>> 58) & (STRIPES - 1)];
+            synchronized (stripe) {
+                boolean maybeSeen = stripe.bloomContainsAndSet(fp, hashCount);
+                if (!exact) {
+                    if (!maybeSeen) stripe.count++;
+                    return !maybeSeen;
+                }
+                if (maybeSeen && stripe.tableContains(fp)) return false;
+                stripe.tableInsert(fp); // Bloom miss, or a Bloom false positive
+                return true;
+            }
+        }
+
+        @Override
+        public boolean contains(String url) {
+            long fp = fingerprint(url);
+            Stripe stripe = stripes[(int) (fp >>> 58) & (STRIPES - 1)];
+            synchronized (stripe) {
+                if (!stripe.bloomContains(fp, hashCount)) return false;
+                return !exact || stripe.tableContains(fp);
+            }
+        }
+
+        @Override
+        public long size() {
+            long total = 0;
+            for (Stripe stripe : stripes) {
+                synchronized (stripe) {
+                    total += stripe.count;
+                }
+            }
+            return total;
+        }
+
+        // Bytes held in Bloom bits and fingerprint tables
+        long memoryBytes() {
+            long total = 0;
+            for (Stripe stripe : stripes) {
+                synchronized (stripe) {
+                    total += 8L * stripe.bloom.length + (stripe.table == null ? 0 : 8L * stripe.table.length);
+                }
+            }
+            return total;
+        }
+
+        // 64-bit hash of the URL characters (FNV-1a with a murmur finalizer); 0 is reserved as "empty"
+        static long fingerprint(String url) {
+            long h = 0xcbf29ce484222325L;
+            for (int i = 0; i < url.length(); i++) {
+                h ^= url.charAt(i);
+                h *= 0x100000001b3L;
+            }
+            h ^= h >>> 33;
+            h *= 0xff51afd7ed558ccdL;
+            h ^= h >>> 33;
+            h *= 0xc4ceb9fe1a85ec53L;
+            h ^= h >>> 33;
+            return h == 0 ? 1 : h;
+        }
+
+        private static final class Stripe {
+            final long[] bloom;
+            long[] table; // Open addressing, linear probing, 0 = empty slot
+            int count;
+
+            Stripe(int bloomWords, boolean exact) {
+                bloom = new long[bloomWords];
+                table = exact ? new long[INITIAL_TABLE] : null;
+            }
+
+            // Double hashing: index_i = h1 + i * h2 over the stripe's bit range
+            boolean bloomContainsAndSet(long fp, int k) {
+                long bits = 64L * bloom.length;
+                long h1 = fp & 0x3FFFFFFFFFFFFFFL; // Low bits; the top bits chose the stripe
+                long h2 = (fp >>> 29) | 1;
+                boolean allSet = true;
+                for (int i = 0; i < k; i++) {
+                    long bit = Math.floorMod(h1 + i * h2, bits);
+                    int word = (int) (bit >>> 6);
+                    long mask = 1L << bit;
+                    if ((bloom[word] & mask) == 0) {
+                        allSet = false;
+                        bloom[word] |= mask;
+                    }
+                }
+                return allSet;
+            }
+
+            boolean bloomContains(long fp, int k) {
+                long bits = 64L * bloom.length;
+                long h1 = fp & 0x3FFFFFFFFFFFFFFL;
+                long h2 = (fp >>> 29) | 1;
+                for (int i = 0; i < k; i++) {
+                    long bit = Math.floorMod(h1 + i * h2, bits);
+                    if ((bloom[(int) (bit >>> 6)] & (1L << bit)) == 0) return false;
+                }
+                return true;
+            }
+
+            boolean tableContains(long fp) {
+                int mask = table.length - 1;
+                for (int i = slot(fp, mask); ; i = (i + 1) & mask) {
+                    long v = table[i];
+                    if (v == fp) return true;
+                    if (v == 0) return false;
+                }
+            }
+
+            void tableInsert(long fp) {
+                if ((count + 1) * 4L > table.length * 3L) grow(); // Keep load factor under 0.75
+                int mask = table.length - 1;
+                int i = slot(fp, mask);
+                while (table[i] != 0) {
+                    if (table[i] == fp) return;
+                    i = (i + 1) & mask;
+                }
+                table[i] = fp;
+                count++;
+            }
+
+            private void grow() {
+                long[] old = table;
+                table = new long[old.length * 2];
+                int mask = table.length - 1;
+                for (long v : old) {
+                    if (v == 0) continue;
+                    int i = slot(v, mask);
+                    while (table[i] != 0) i = (i + 1) & mask;
+                    table[i] = v;
+                }
+            }
+
+            private static int slot(long fp, int mask) {
+                return (int) (fp ^ (fp >>> 32)) & mask;
+            }
+        }
+    }
+
+    // Extraction benchmark: MB/s over the .html/.htm files in a directory (or a generated corpus).
+    // Files are loaded up front so only the extractor is measured.
+    static void benchmarkExtractor(Path dir, int passes) throws IOException {
+        if (dir == null) dir = generateCorpus(200, 64 * 1024);
+        List<byte[]> pages;
+        try (Stream<Path> files = Files.walk(dir)) {
+            List<Path> html = files.filter(f -> {
+                String name = f.getFileName().toString().toLowerCase(Locale.ROOT);
+                return name.endsWith(".html") || name.endsWith(".htm");
+            }).collect(Collectors.toList());
+            pages = new ArrayList<>();
+            for (Path f : html) pages.add(Files.readAllBytes(f));
+        }
+        long bytes = 0;
+        for (byte[] page : pages) bytes += page.length;
+        if (bytes == 0) {
+            System.out.println("No HTML files under " + dir);
+            return;
+        }
+
+        long[] links = new long[1];
+        Consumer<String> counter = link -> links[0]++;
+        for (int pass = 0; pass <= passes; pass++) { // Pass 0 warms up the JIT
+            links[0] = 0;
+            long start = System.nanoTime();
+            for (byte[] page : pages) {
+                new LinkExtractor("https://bench.example.com/dir/page.html", counter).feed(page, 0, page.length);
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            if (pass > 0) {
+                System.out.printf("pass %d: files=%d size=%.1f MB links=%d time=%.3fs rate=%.1f MB/s%n",
+                        pass, pages.size(), bytes / 1e6, links[0], seconds, bytes / 1e6 / seconds);
+            }
+        }
+    }
+
+    // Synthetic HTML pages with a mix of text, scripts, comments and relative/absolute links
+    private static Path generateCorpus(int files, int bytesPerFile) throws IOException {
+        Path dir = Files.createTempDirectory("crawler-corpus");
+        dir.toFile().deleteOnExit();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int f = 0; f < files; f++) {
+            StringBuilder html = new StringBuilder("<!DOCTYPE html><html><head><title>Page " + f + "</title>"
+                    + "<link rel=\"stylesheet\" href=\"/css/site.css\"><script>var s = '<a href=\"/no\">';</script>"
+                    + "</head><body>\n");
+            while (html.length() < bytesPerFile) {
+                switch (random.nextInt(5)) {
+                    case 0: html.append("<p class=\"text\">Lorem ipsum dolor sit amet, consectetur adipiscing elit.</p>\n"); break;
+                    case 1: html.append("<a href=\"../section").append(random.nextInt(100)).append("/item.html#top\">rel</a>\n"); break;
+                    case 2: html.append("<a HREF='https://Other").append(random.nextInt(10)).append(".Example.com:443/a?b=1&amp;c=2'>abs</a>\n"); break;
+                    case 3: html.append("<img src=/img/").append(random.nextInt(1000)).append(".png alt=\"x\">\n"); break;
+                    default: html.append("<!-- <a href=\"/commented\"> --><div data-x=\"1\"><span>text</span></div>\n");
+                }
+            }
+            html.append("</body></html>\n");
+            Path file = dir.resolve("page" + f + ".html");
+            Files.write(file, html.toString().getBytes(StandardCharsets.UTF_8));
+            file.toFile().deleteOnExit();
+        }
+        return dir;
+    }
+
+    // Dedup benchmark: heap per URL and add() throughput for the String set vs the compact set
+    static void benchmarkVisitedSet(int urls) {
+        String[] names = {"HashVisitedSet", "CompactVisitedSet(exact)", "CompactVisitedSet(bloom only)"};
+        for (int variant = 0; variant < names.length; variant++) {
+            long before = usedHeap();
+            VisitedSet set = variant == 0 ? new HashVisitedSet()
+                    : new CompactVisitedSet(urls, DEFAULT_BLOOM_FPP, variant == 1);
+            long start = System.nanoTime();
+            long added = 0;
+            for (int i = 0; i < urls; i++) {
+                if (set.add("https://host" + (i & 1023) + ".example.com/path/" + i + "/page.html")) added++;
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            long bytes = usedHeap() - before;
+            Reference.reachabilityFence(set); // Keep the set reachable until measured
+            System.out.printf("%-30s urls=%d added=%d heap=%.1f MB bytes/url=%.1f add=%.2f M/s%n",
+                    names[variant], urls, added, bytes / 1e6, (double) bytes / urls, urls / seconds / 1e6);
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) System.gc();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    // Local HttpServer for benchmarks. Every page links to <path>/next1 and <path>/next2;
+    // paths more than siteDepth levels deep return 404, so a full crawl fetches exactly
+    // 2^(siteDepth + 2) - 1 pages. Pages carry an ETag and answer a matching If-None-Match
+    // with 304. served counts responses.
+    static HttpServer startSyntheticSite(int siteDepth, int latencyMillis, AtomicInteger served) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 4096);
+        server.createContext("/", exchange -> {
+            try {
+                Thread.sleep(latencyMillis); // Simulated network/server latency
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            String path = exchange.getRequestURI().getPath();
+            int depth = path.split("/next", -1).length - 1;
+            byte[] body = ("<html><body><a href=\"" + path + "/next1\">1</a>"
+                    + "<a href=\"" + path + "/next2\">2</a></body></html>").getBytes(StandardCharsets.UTF_8);
+            String etag = "\"" + Integer.toHexString(path.hashCode()) + "\"";
+            served.incrementAndGet();
+            if (depth <= siteDepth && etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+            exchange.getResponseHeaders().set("ETag", etag);
+            exchange.sendResponseHeaders(depth <= siteDepth ? 200 : 404, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        return server;
+    }
+
+    static void stopSyntheticSite(HttpServer server) {
+        server.stop(0);
+        ((ExecutorService) server.getExecutor()).shutdownNow();
+    }
+
+    // Benchmark: crawl a synthetic site served by a local HttpServer in both fetch modes.
+    static void benchmark(int siteDepth, int latencyMillis, int numThreads, int maxInFlight) throws IOException {
+        AtomicInteger served = new AtomicInteger();
+        HttpServer server = startSyntheticSite(siteDepth, latencyMillis, served);
+        String root = "http://127.0.0.1:" + server.getAddress().getPort() + "/site";
+
+        try {
+            for (FetchMode mode : FetchMode.values()) {
+                served.set(0);
+                WebCrawler crawler = new WebCrawler(numThreads, Integer.MAX_VALUE, mode, maxInFlight);
+                crawler.setLogPages(false);
+                crawler.setPoliteness(Double.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE); // One local host: no throttling
+                long start = System.nanoTime();
+                crawler.startCrawling(root);
+                double seconds = (System.nanoTime() - start) / 1e9;
+                System.out.printf("%-8s threads=%d inFlight=%d pages=%d time=%.2fs rate=%.0f pages/s%n",
+                        mode, numThreads, mode == FetchMode.ASYNC ? maxInFlight : numThreads,
+                        served.get(), seconds, served.get() / seconds);
+                System.out.println("         " + crawler.getFrontierStats());
+                System.out.print("         " + crawler.getHostStats(1));
+            }
+        } finally {
+            stopSyntheticSite(server);
+        }
+    }
+
+    // Conditional GET benchmark: crawl the synthetic site twice with a saved validator cache;
+    // the second run should be all 304s with no parsing
+    static void benchmarkConditionalGet(int siteDepth, int latencyMillis) throws IOException {
+        AtomicInteger served = new AtomicInteger();
+        HttpServer server = startSyntheticSite(siteDepth, latencyMillis, served);
+        String root = "http://127.0.0.1:" + server.getAddress().getPort() + "/site";
+        Path cacheFile = Files.createTempFile("crawler-validators", ".bin");
+        Files.delete(cacheFile);
+
+        try {
+            FetchMode[][] runs = {{FetchMode.ASYNC}, FetchMode.values()}; // Run 1 fills the cache file
+            for (int run = 0; run < runs.length; run++) {
+                for (FetchMode mode : runs[run]) {
+                    served.set(0);
+                    WebCrawler crawler = new WebCrawler(8, Integer.MAX_VALUE, mode, 256);
+                    crawler.setLogPages(false);
+                    crawler.setPoliteness(Double.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE);
+                    crawler.enableConditionalGet(64L << 20, cacheFile);
+                    long start = System.nanoTime();
+                    crawler.startCrawling(root);
+                    System.out.printf("run %d %-8s pages=%d time=%.2fs%n       %s%n", run + 1, mode, served.get(),
+                            (System.nanoTime() - start) / 1e9, crawler.getCacheStats());
+                }
+            }
+        } finally {
+            stopSyntheticSite(server);
+            Files.deleteIfExists(cacheFile);
+        }
+    }
+
+    // Checkpoint benchmark: stop a crawl after firstRunSeconds, resume it from the log and
+    // check that the two runs together fetch the site once (plus pages that were in flight).
+    static void benchmarkCheckpoint(int siteDepth, int latencyMillis, int firstRunSeconds, long intervalMillis)
+            throws IOException {
+        AtomicInteger served = new AtomicInteger();
+        HttpServer server = startSyntheticSite(siteDepth, latencyMillis, served);
+        String root = "http://127.0.0.1:" + server.getAddress().getPort() + "/site";
+        Path log = Files.createTempFile("crawler-checkpoint", ".log");
+        long expected = (1L << (siteDepth + 2)) - 1;
+
+        try {
+            int[] runs = {firstRunSeconds, DEFAULT_CRAWL_TIMEOUT_SECONDS};
+            long total = 0;
+            for (int run = 0; run < runs.length; run++) {
+                served.set(0);
+                WebCrawler crawler = new WebCrawler(8, Integer.MAX_VALUE);
+                crawler.setLogPages(false);
+                crawler.setPoliteness(Double.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE);
+                crawler.setCrawlTimeout(runs[run]);
+                crawler.enableCheckpoints(log, intervalMillis);
+                long start = System.nanoTime();
+                crawler.startCrawling(root);
+                total += served.get();
+                System.out.printf("run %d: pages=%d time=%.2fs%n", run + 1, served.get(), (System.nanoTime() - start) / 1e9);
+                System.out.println("       " + crawler.getCheckpointStats());
+            }
+            System.out.printf("site=%d pages, fetched=%d, refetched=%d%n", expected, total, total - expected);
+        } finally {
+            stopSyntheticSite(server);
+            Files.deleteIfExists(log);
+        }
+    }
+
+    // Main method to run the crawler
+    // Run with "bench [siteDepth] [latencyMillis] [threads] [maxInFlight]" to benchmark fetch modes locally.
+    // Run with "dedup-bench [urls]" to compare visited-set memory and throughput.
+    // Run with "extract-bench [htmlDir] [passes]" to measure link extraction in MB/s.
+    // Run with "checkpoint-bench [siteDepth] [latencyMillis] [firstRunSeconds] [intervalMillis]" to test resume.
+    // Run with "cache-bench [siteDepth] [latencyMillis]" to compare a fresh crawl with a conditional recrawl.
+    public static void main(String[] args) throws IOException {
+        if (args.length > 0 && args[0].equals("cache-bench")) {
+            benchmarkConditionalGet(args.length > 1 ? Integer.parseInt(args[1]) : 8,
+                    args.length > 2 ? Integer.parseInt(args[2]) : 20);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("checkpoint-bench")) {
+            benchmarkCheckpoint(args.length > 1 ? Integer.parseInt(args[1]) : 9,
+                    args.length > 2 ? Integer.parseInt(args[2]) : 20,
+                    args.length > 3 ? Integer.parseInt(args[3]) : 2,
+                    args.length > 4 ? Long.parseLong(args[4]) : 200);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("extract-bench")) {
+            benchmarkExtractor(args.length > 1 ? Path.of(args[1]) : null,
+                    args.length > 2 ? Integer.parseInt(args[2]) : 5);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("dedup-bench")) {
+            benchmarkVisitedSet(args.length > 1 ? Integer.parseInt(args[1]) : 2_000_000);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("bench")) {
+            benchmark(args.length > 1 ? Integer.parseInt(args[1]) : 9,
+                    args.length > 2 ? Integer.parseInt(args[2]) : 20,
+                    args.length > 3 ? Integer.parseInt(args[3]) : 5,
+                    args.length > 4 ? Integer.parseInt(args[4]) : 1000);
+            return;
+        }
+
         WebCrawler crawler = new WebCrawler(5, 2); // 5 threads, max depth 2
         crawler.startCrawling("https://example.com"); // Start crawling from this URL
     }
@@ -114,19 +2515,17 @@ public class WebCrawler {
 Expected Output:
 ----------------
 - The program will start crawling from "https://example.com".
-- It will extract and enqueue two new URLs per page: "https://example.com/next1" and "https://example.com/next2".
+- It will extract every href/src link from each HTML page, resolve it against the page URL and enqueue the ones not seen before.
 - The process will continue until max depth (2) is reached.
-- URLs will be crawled in parallel using multiple threads.
+- URLs will be crawled in parallel using multiple threads, round-robin across hosts.
 
 Example output (order may vary due to multithreading):
 
 Crawling: https://example.com
-Crawling: https://example.com/next1
-Crawling: https://example.com/next2
-Crawling: https://example.com/next1/next1
-Crawling: https://example.com/next1/next2
-Crawling: https://example.com/next2/next1
-Crawling: https://example.com/next2/next2
+Crawling: https://www.iana.org/domains/example
+Crawling: https://www.iana.org/
+Crawling: https://www.iana.org/domains
+...
 
 If a page fetch fails:
 Failed to fetch: https://example.com/next1 | Error: Connection timed out